@@ -0,0 +1,44 @@
+/**
+ * ベンチマークで利用するグラフ
+ * 固定のシードから生成するので，どの実行でも同じグラフになる
+ */
+public class BenchmarkGraphs {
+	/**
+	 * ベンチマークのマスターシード
+	 */
+	public final static long SEED = 20180101L;
+
+	/**
+	 * 生成の余裕（RandomGeometricGraphGeneratorと同じ値）
+	 */
+	private final static double E = 0.1;
+
+	/**
+	 * ノード数と半径から，シミュレーションと同じ密度（連結する閾値付近）になる範囲を求める
+	 * nodeNum = (1+e) * log(area) * area / (π r^2) を満たすareaを反復で求め，その平方根を返す
+	 * @param nodeNum ノード数
+	 * @param radius ノードが接続する半径距離
+	 * @return 正方形のグラフの1辺
+	 */
+	public static float range(int nodeNum, float radius) {
+		double area = nodeNum * Math.PI * radius * radius;
+		for (int i = 0; i < 50; i++) {
+			area = nodeNum * Math.PI * radius * radius / ((1 + E) * Math.log(area));
+		}
+		return (float) Math.sqrt(area);
+	}
+
+	/**
+	 * CSR形式のグラフを生成する
+	 * @param nodeNum ノード数
+	 * @param radius ノードが接続する半径距離
+	 * @return 生成したグラフ
+	 */
+	public static CsrGraph csr(int nodeNum, float radius) {
+		float range = range(nodeNum, radius);
+		SpatialGridGraphGenerator generator = new SpatialGridGraphGenerator(nodeNum, radius, range, range);
+		long graphSeed = SeedSequence.derive(SEED, nodeNum * 1000L + (long) (radius * 10));
+		generator.setRandom(SeedSequence.random(graphSeed, SeedSequence.GENERATOR));
+		return generator.generateCsr();
+	}
+}
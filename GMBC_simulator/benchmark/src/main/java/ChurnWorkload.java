@@ -0,0 +1,34 @@
+import java.util.Properties;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+
+import bench.Workload;
+
+/**
+ * ChurnGraphの1ステップ
+ * グラフはノードの離脱，復帰を繰り返して定常状態になる
+ */
+public class ChurnWorkload implements Workload {
+	private ChurnGraph cg = new ChurnGraph();
+
+	@Override
+	public void setup(Properties params) {
+		int nodeNum = Integer.parseInt(params.getProperty("nodeNum"));
+		float radius = Float.parseFloat(params.getProperty("radius"));
+		Graph graph = SpatialGridGraphGenerator.toGraph(BenchmarkGraphs.csr(nodeNum, radius), "benchmark");
+		// 復帰したノードへ属性を引き継ぐので，プロトコルの初期化と同じ属性を付けておく
+		for (Node node : graph.getEachNode()) {
+			node.setAttribute("Infection", false);
+		}
+		cg.setGraph(graph);
+		cg.setChurnRate(Float.parseFloat(params.getProperty("rate")));
+		cg.setRandom(SeedSequence.random(BenchmarkGraphs.SEED, SeedSequence.DYNAMICS));
+		cg.init();
+	}
+
+	@Override
+	public Object run() {
+		return cg.run();
+	}
+}
@@ -0,0 +1,42 @@
+import java.util.Properties;
+
+import org.graphstream.graph.Graph;
+
+import bench.Workload;
+
+/**
+ * 1ノードのMBCの生成
+ * 呼び出しごとに対象のノードを順に変える
+ */
+public class MbcWorkload implements Workload {
+	private MBCGenerator mbcGenerator = new MBCGenerator();
+
+	private CsrGraph csr;
+
+	private Graph graph;
+
+	/**
+	 * 次にMBCを生成するノード
+	 */
+	private int next = 0;
+
+	@Override
+	public void setup(Properties params) {
+		int nodeNum = Integer.parseInt(params.getProperty("nodeNum"));
+		float radius = Float.parseFloat(params.getProperty("radius"));
+		csr = BenchmarkGraphs.csr(nodeNum, radius);
+		if (!params.getProperty("engine").equals("csr")) {
+			graph = SpatialGridGraphGenerator.toGraph(csr, "benchmark");
+		}
+	}
+
+	@Override
+	public Object run() {
+		int root = next;
+		next = (next + 1) % csr.getNodeCount();
+		if (graph != null) {
+			return mbcGenerator.generate(graph.getNode(root));
+		}
+		return mbcGenerator.generate(csr, root);
+	}
+}
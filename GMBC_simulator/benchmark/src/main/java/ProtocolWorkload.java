@@ -0,0 +1,39 @@
+import java.util.Properties;
+import java.util.Random;
+
+import bench.Workload;
+
+/**
+ * プロトコルの1試行
+ * 初期化してから，全てのノードへの配信が終わるまでホップを繰り返す
+ * 毎回同じシードで乱数を初期化するので，どの呼び出しも同じ配信になる
+ */
+public class ProtocolWorkload implements Workload {
+	private Protocol protocol;
+
+	private long seed;
+
+	@Override
+	public void setup(Properties params) {
+		int nodeNum = Integer.parseInt(params.getProperty("nodeNum"));
+		float radius = Float.parseFloat(params.getProperty("radius"));
+		int fanout = Integer.parseInt(params.getProperty("fanout"));
+		CsrGraph csr = BenchmarkGraphs.csr(nodeNum, radius);
+
+		protocol = Simulate.getProtocol(params.getProperty("protocol"), fanout, 1.0f);
+		if (params.getProperty("engine").equals("csr")) {
+			protocol.setGraph(csr);
+		} else {
+			protocol.setGraph(SpatialGridGraphGenerator.toGraph(csr, "benchmark"));
+		}
+		seed = SeedSequence.derive(BenchmarkGraphs.SEED, SeedSequence.PROTOCOL);
+	}
+
+	@Override
+	public Object run() {
+		protocol.setRandom(new Random(seed));
+		protocol.init();
+		while (!protocol.run());
+		return protocol.getMsgNum();
+	}
+}
@@ -0,0 +1,32 @@
+import java.util.Properties;
+
+import org.graphstream.graph.Graph;
+
+import bench.Workload;
+
+/**
+ * TimeVaryingGraphの1ステップ
+ * グラフは切断，再接続を繰り返して定常状態になる
+ */
+public class TimeVaryingWorkload implements Workload {
+	private TimeVaryingGraph tvg = new TimeVaryingGraph();
+
+	private Graph graph;
+
+	@Override
+	public void setup(Properties params) {
+		int nodeNum = Integer.parseInt(params.getProperty("nodeNum"));
+		float radius = Float.parseFloat(params.getProperty("radius"));
+		graph = SpatialGridGraphGenerator.toGraph(BenchmarkGraphs.csr(nodeNum, radius), "benchmark");
+		tvg.setGraph(graph);
+		tvg.setVaryingRate(Float.parseFloat(params.getProperty("rate")));
+		tvg.setRandom(SeedSequence.random(BenchmarkGraphs.SEED, SeedSequence.DYNAMICS));
+		tvg.init();
+	}
+
+	@Override
+	public Object run() {
+		tvg.run();
+		return graph;
+	}
+}
@@ -0,0 +1,63 @@
+package bench;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * グラフの変化の1ステップ（TimeVaryingGraph.run, ChurnGraph.run）を計測する
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DynamicsBenchmark {
+	@Param({"1000", "10000"})
+	public int nodeNum;
+
+	@Param({"10", "15"})
+	public float radius;
+
+	/**
+	 * 切断，再接続（離脱，復帰）される確率
+	 */
+	@Param({"0.1", "0.5"})
+	public float rate;
+
+	private Workload timeVarying;
+
+	private Workload churn;
+
+	@Setup
+	public void setup() {
+		Properties params = new Properties();
+		params.setProperty("nodeNum", nodeNum + "");
+		params.setProperty("radius", radius + "");
+		params.setProperty("rate", rate + "");
+		timeVarying = Workload.load("TimeVaryingWorkload", params);
+		churn = Workload.load("ChurnWorkload", params);
+	}
+
+	@Benchmark
+	public Object timeVarying() {
+		return timeVarying.run();
+	}
+
+	@Benchmark
+	public Object churn() {
+		return churn.run();
+	}
+}
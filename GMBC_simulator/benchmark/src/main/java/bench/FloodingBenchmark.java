@@ -0,0 +1,59 @@
+package bench;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Floodingの1試行（初期化から配信の終了までのホップ）を計測する
+ * FloodingはFanout数を使わないので，ProtocolBenchmarkと分けてFanout数のパラメータを持たない
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FloodingBenchmark {
+	@Param({"1000", "10000"})
+	public int nodeNum;
+
+	@Param({"10", "15"})
+	public float radius;
+
+	/**
+	 * graphstream : GraphStreamのグラフで実行
+	 * csr         : CSR形式のグラフで実行
+	 */
+	@Param({"graphstream", "csr"})
+	public String engine;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		Properties params = new Properties();
+		params.setProperty("nodeNum", nodeNum + "");
+		params.setProperty("radius", radius + "");
+		params.setProperty("protocol", "Flooding");
+		params.setProperty("fanout", "0");
+		params.setProperty("engine", engine);
+		workload = Workload.load("ProtocolWorkload", params);
+	}
+
+	@Benchmark
+	public Object trial() {
+		return workload.run();
+	}
+}
@@ -0,0 +1,57 @@
+package bench;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 1ノードのMBCの生成（MBCGenerator.generate）を計測する
+ * 呼び出しごとに対象のノードを順に変える
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MbcBenchmark {
+	@Param({"1000", "10000"})
+	public int nodeNum;
+
+	@Param({"10", "15"})
+	public float radius;
+
+	/**
+	 * graphstream : GraphStreamのノードから生成
+	 * csr         : CSR形式のグラフから生成
+	 */
+	@Param({"graphstream", "csr"})
+	public String engine;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		Properties params = new Properties();
+		params.setProperty("nodeNum", nodeNum + "");
+		params.setProperty("radius", radius + "");
+		params.setProperty("engine", engine);
+		workload = Workload.load("MbcWorkload", params);
+	}
+
+	@Benchmark
+	public Object generate() {
+		return workload.run();
+	}
+}
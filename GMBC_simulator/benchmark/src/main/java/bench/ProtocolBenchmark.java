@@ -0,0 +1,65 @@
+package bench;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ゴシップ型のプロトコルの1試行（初期化から配信の終了までのホップ）を計測する
+ * Fanout数を使わないFloodingはFloodingBenchmarkで計測する
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtocolBenchmark {
+	@Param({"1000", "10000"})
+	public int nodeNum;
+
+	@Param({"10", "15"})
+	public float radius;
+
+	@Param({"FFG", "GMBC"})
+	public String protocol;
+
+	@Param({"4", "8", "16"})
+	public int fanout;
+
+	/**
+	 * graphstream : GraphStreamのグラフで実行
+	 * csr         : CSR形式のグラフで実行
+	 */
+	@Param({"graphstream", "csr"})
+	public String engine;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		Properties params = new Properties();
+		params.setProperty("nodeNum", nodeNum + "");
+		params.setProperty("radius", radius + "");
+		params.setProperty("protocol", protocol);
+		params.setProperty("fanout", fanout + "");
+		params.setProperty("engine", engine);
+		workload = Workload.load("ProtocolWorkload", params);
+	}
+
+	@Benchmark
+	public Object trial() {
+		return workload.run();
+	}
+}
@@ -0,0 +1,38 @@
+package bench;
+
+import java.util.Properties;
+
+/**
+ * ベンチマークで計測する処理
+ * シミュレータのクラスはデフォルトパッケージにあり，JMHのベンチマーククラス（パッケージが必要）からは
+ * 直接参照できないので，デフォルトパッケージ側でこのインタフェースを実装し，クラス名で読み込む
+ */
+public interface Workload {
+	/**
+	 * 計測の前に，グラフの生成などの準備を行う
+	 * @param params ベンチマークのパラメータ
+	 */
+	void setup(Properties params);
+
+	/**
+	 * 計測する処理を1回実行する
+	 * @return 処理の結果（JMHのBlackholeで消費する）
+	 */
+	Object run();
+
+	/**
+	 * デフォルトパッケージのWorkloadをクラス名から生成する
+	 * @param className クラス名
+	 * @param params ベンチマークのパラメータ
+	 * @return 準備済みのWorkload
+	 */
+	static Workload load(String className, Properties params) {
+		try {
+			Workload workload = (Workload) Class.forName(className).getDeclaredConstructor().newInstance();
+			workload.setup(params);
+			return workload;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Workloadの生成に失敗: " + className, e);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * グラフの範囲を格子状のエリアに分割するクラス
+ * エリアには左下から x方向 → y方向 の順に 0 から size()-1 の番号を振る<br>
+ * エッジの変化の確率をエリアごとに変える（偏りのある切断など）ために利用する
+ */
+public class AreaPartition {
+	/**
+	 * x軸，y軸方向の分割数
+	 */
+	private final int separateX;
+	private final int separateY;
+
+	/**
+	 * 1エリアの横幅，縦幅
+	 */
+	private final int areaX;
+	private final int areaY;
+
+	/**
+	 * コンストラクタ
+	 * @param rangeX グラフのx軸方向の範囲
+	 * @param rangeY グラフのy軸方向の範囲
+	 * @param separateX x軸方向の分割数
+	 * @param separateY y軸方向の分割数
+	 */
+	public AreaPartition(float rangeX, float rangeY, int separateX, int separateY) {
+		this.separateX = separateX;
+		this.separateY = separateY;
+		this.areaX = Math.max((int)rangeX / separateX, 1);
+		this.areaY = Math.max((int)rangeY / separateY, 1);
+	}
+
+	/**
+	 * エリアの数を取得する
+	 * @return エリアの数
+	 */
+	public int size() {
+		return separateX * separateY;
+	}
+
+	/**
+	 * 座標が属するエリアを取得する
+	 * 範囲が分割数で割り切れない場合，端の余りは最後のエリアに含める
+	 * @param x x座標
+	 * @param y y座標
+	 * @return エリアの番号
+	 */
+	public int getArea(int x, int y) {
+		int cellX = Math.min(Math.max(x / areaX, 0), separateX - 1);
+		int cellY = Math.min(Math.max(y / areaY, 0), separateY - 1);
+		return cellX + cellY * separateX;
+	}
+
+	/**
+	 * エリアの市松模様での色を取得する
+	 * 左下のエリアを0として，隣り合うエリアは異なる色になる
+	 * @param area エリアの番号
+	 * @return 0 または 1
+	 */
+	public int getParity(int area) {
+		return (area % separateX + area / separateX) % 2;
+	}
+}
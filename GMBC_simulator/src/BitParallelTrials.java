@@ -0,0 +1,439 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 1つのグラフでの複数の試行を，ビット並列でまとめて実行するクラス
+ * 各試行をレーンと呼び，最大64レーンの受信済みや送信待ちを1ノードにつき1つのlong（ビットlがレーンl）で表す<br>
+ * Floodingは隣接ノードの走査ごとに，全レーンの送信をOR演算でまとめて進める<br>
+ * FFGは隣接ノードの走査をレーンで共有し，転送先の選択だけをレーンごとの乱数で行う<br>
+ * 切断中のエッジもエッジIDごとのlongで表し，各レーンのTimeVaryingGraphが自分のビットを更新する（setLaneMask）<br>
+ * 同じhopで複数の送信者から受信した場合にどれを送信元とみなすかがProtocolとは異なるので，
+ * 1試行ごとの結果は一致しないが，結果の分布は同じになる
+ */
+public class BitParallelTrials {
+	/**
+	 * 同時に実行できる試行の数
+	 */
+	public final static int LANES = 64;
+
+	/**
+	 * 受信したエッジのバッファに，最初に確保する送信待ちのノードの数（ノード数が少なければノード数）
+	 */
+	private final static int INITIAL_SLOTS = 1024;
+
+	/**
+	 * 対象となるグラフ
+	 */
+	private final CsrGraph csr;
+
+	/**
+	 * 送信するメッセージ数．0以下ならFlooding（送信元以外の全ての隣接ノードへ転送）
+	 */
+	private final int fanout;
+
+	/**
+	 * 各エッジが切断中のレーン（CSRのエッジIDで管理）
+	 */
+	private final long[] deadEdges;
+
+	/**
+	 * レーンごとの乱数生成器（転送先の選択に利用）
+	 */
+	private final Random[] rnds = new Random[LANES];
+
+	/**
+	 * 各ノードが受信済みのレーン
+	 */
+	private final long[] infection;
+
+	/**
+	 * 各ノードが送信待ちのレーンと，次のhopで送信待ちになるレーン
+	 */
+	private long[] front;
+	private long[] next;
+
+	/**
+	 * 送信待ちのレーンが1つでもあるノードと，次のhopでのそのノード
+	 */
+	private int[] frontList;
+	private int frontNum;
+	private int[] nextList;
+	private int nextNum;
+
+	/**
+	 * 送信待ちのノードが各レーンで最初に受信したエッジ（ソースノードは-1）と，次のhopでのもの
+	 * frontListでの位置を i として i * LANES + lane で参照する．送信待ちのノードの分だけを持ち，足りなくなったら伸ばす
+	 */
+	private int[] frontSender;
+	private int[] nextSender;
+
+	/**
+	 * 次のhopで送信待ちになるノードの，nextListでの位置（nextが0でないノードのみ有効）
+	 */
+	private final int[] nextSlot;
+
+	/**
+	 * 隣接ノードの走査で使い回すバッファ（長さは次数の最大値）
+	 */
+	private final int[] neighbor;
+	private final int[] edge;
+	private final long[] alive;
+	private final int[] candidate;
+
+	/**
+	 * ソースノード
+	 */
+	private final int source;
+
+	/**
+	 * 実行中のレーン
+	 */
+	private long running;
+
+	/**
+	 * 進めたhop数
+	 */
+	private int hop;
+
+	// 取得するデータ
+	/**
+	 * レーンごとの受信済みノード数，メッセージ数，ホップ数
+	 */
+	private final int[] receivedNodeNum = new int[LANES];
+	private final int[] msgNum = new int[LANES];
+	private final int[] hopNum = new int[LANES];
+
+	/**
+	 * Floodingのメッセージ数をレーンごとに数えるビットスライスのカウンタ
+	 * msgPlanes[b]のビットlが，レーンlのカウントの2^bの位を表す
+	 */
+	private final long[] msgPlanes = new long[Integer.SIZE];
+
+	/**
+	 * コンストラクタ
+	 * @param csr 対象となるグラフ
+	 * @param fanout Fanout数．0以下ならFlooding
+	 */
+	public BitParallelTrials(CsrGraph csr, int fanout) {
+		this.csr = csr;
+		this.fanout = fanout;
+		int nodeNum = csr.getNodeCount();
+		deadEdges = new long[csr.getEdgeCount()];
+		infection = new long[nodeNum];
+		front = new long[nodeNum];
+		next = new long[nodeNum];
+		frontList = new int[nodeNum];
+		nextList = new int[nodeNum];
+		nextSlot = new int[nodeNum];
+		frontSender = new int[Math.max(Math.min(nodeNum, INITIAL_SLOTS), 1) * LANES];
+		nextSender = new int[frontSender.length];
+		int maxDegree = 0;
+		for (int v = 0; v < nodeNum; v++) {
+			maxDegree = Math.max(maxDegree, csr.getDegree(v));
+		}
+		neighbor = new int[maxDegree];
+		edge = new int[maxDegree];
+		alive = new long[maxDegree];
+		candidate = new int[maxDegree];
+		source = csr.getIndex("n1");
+	}
+
+	/**
+	 * プロトコルに対応するビット並列の実行を生成する
+	 * @param protocol プロトコル
+	 * @param csr 対象となるグラフ
+	 * @return ビット並列の実行．対応していないプロトコル（GMBC）ならnull
+	 */
+	public static BitParallelTrials create(Protocol protocol, CsrGraph csr) {
+		if (protocol instanceof Flooding) {
+			return new BitParallelTrials(csr, 0);
+		}
+		if (protocol instanceof FixedFanoutGossip) {
+			return new BitParallelTrials(csr, ((FixedFanoutGossip) protocol).getFanout());
+		}
+		return null;
+	}
+
+	/**
+	 * 切断中のエッジのマスクを取得する
+	 * 各レーンのTimeVaryingGraph.setLaneMaskに渡す
+	 * @return 各エッジが切断中のレーン（CSRのエッジID）
+	 */
+	public long[] getEdgeMask() {
+		return deadEdges;
+	}
+
+	/**
+	 * レーンの乱数生成器を設定する
+	 * @param lane レーン
+	 * @param rnd 乱数生成器
+	 */
+	public void setRandom(int lane, Random rnd) {
+		rnds[lane] = rnd;
+	}
+
+	/**
+	 * 初期化．
+	 * 先頭からlaneNum個のレーンで，ソースノードだけが受信済みの状態にする
+	 * @param laneNum 実行するレーンの数（1からLANESまで）
+	 */
+	public void init(int laneNum) {
+		if (laneNum < 1 || laneNum > LANES) {
+			throw new IllegalArgumentException("レーンの数が範囲外: " + laneNum);
+		}
+		long lanes = laneNum == LANES ? -1L : (1L << laneNum) - 1;
+
+		Arrays.fill(infection, 0L);
+		Arrays.fill(front, 0L);
+		Arrays.fill(next, 0L);
+		Arrays.fill(msgPlanes, 0L);
+		Arrays.fill(hopNum, 0);
+
+		// ソースノードの受信（Protocol.initと同じく1通と数える）
+		for (int l = 0; l < laneNum; l++) {
+			frontSender[l] = -1;
+			receivedNodeNum[l] = 1;
+			msgNum[l] = 1;
+		}
+		infection[source] = lanes;
+		front[source] = lanes;
+		frontList[0] = source;
+		frontNum = 1;
+		running = lanes;
+		hop = 0;
+	}
+
+	/**
+	 * 全てのレーンで1hopだけ進める
+	 * 各レーンのTimeVaryingGraphは，実行中のレーン（getRunning）の分だけ先に進めておく
+	 * @return 全てのレーンが終了したか
+	 */
+	public boolean run() {
+		// ホップ数をカウント
+		hop++;
+		nextNum = 0;
+
+		// 送信待ちのノードからメッセージを送信
+		for (int i = 0; i < frontNum; i++) {
+			int v = frontList[i];
+			long lanes = front[v];
+			front[v] = 0L;
+			if (fanout <= 0) {
+				flood(v, i, lanes);
+			} else {
+				gossip(v, i, lanes);
+			}
+		}
+
+		// 送信待ちを入れ替え
+		long still = 0L;
+		for (int i = 0; i < nextNum; i++) {
+			still |= next[nextList[i]];
+		}
+		long[] tmp = front;
+		front = next;
+		next = tmp;
+		int[] tmpList = frontList;
+		frontList = nextList;
+		nextList = tmpList;
+		tmpList = frontSender;
+		frontSender = nextSender;
+		nextSender = tmpList;
+		frontNum = nextNum;
+
+		// 送信待ちがなくなったレーンは終了
+		for (long finished = running & ~still; finished != 0; finished &= finished - 1) {
+			hopNum[Long.numberOfTrailingZeros(finished)] = hop;
+		}
+		running = still;
+		return running == 0L;
+	}
+
+	/**
+	 * Floodingでの送信
+	 * 隣接ノードごとに，エッジが接続している全てのレーンへまとめて送信する
+	 * @param v 転送元
+	 * @param slot 転送元のfrontListでの位置
+	 * @param lanes 転送元が送信待ちのレーン
+	 */
+	private void flood(int v, int slot, long lanes) {
+		int start = csr.getOffset(v);
+		int end = start + csr.getDegree(v);
+		for (int k = start; k < end; k++) {
+			int e = csr.getEdgeId(k);
+			long sent = lanes & ~deadEdges[e];
+			if (sent == 0L) {
+				continue;
+			}
+			countMsg(sent);
+			int to = csr.getNeighbor(k);
+			long received = sent & ~infection[to];
+			if (received != 0L) {
+				receive(to, received, e);
+			}
+		}
+		// 送信元へは送り返さないので，送信元とのエッジが接続しているレーンは1通減らす
+		for (long rest = lanes; rest != 0; rest &= rest - 1) {
+			int l = Long.numberOfTrailingZeros(rest);
+			int e = frontSender[slot * LANES + l];
+			if (e >= 0 && (deadEdges[e] >>> l & 1L) == 0L) {
+				msgNum[l]--;
+			}
+		}
+	}
+
+	/**
+	 * FFGでの送信
+	 * 隣接ノードの走査は全レーンで1度だけ行い，レーンごとにFanout個を選択する
+	 * ソースノードは全ての隣接ノードへ送信する
+	 * @param v 転送元
+	 * @param slot 転送元のfrontListでの位置
+	 * @param lanes 転送元が送信待ちのレーン
+	 */
+	private void gossip(int v, int slot, long lanes) {
+		int start = csr.getOffset(v);
+		int degree = csr.getDegree(v);
+		for (int i = 0; i < degree; i++) {
+			neighbor[i] = csr.getNeighbor(start + i);
+			edge[i] = csr.getEdgeId(start + i);
+			alive[i] = ~deadEdges[edge[i]];
+		}
+
+		for (long rest = lanes; rest != 0; rest &= rest - 1) {
+			int l = Long.numberOfTrailingZeros(rest);
+			long bit = 1L << l;
+			int e = frontSender[slot * LANES + l];
+			int from = e < 0 ? -1 : (csr.getEdgeNode0(e) == v ? csr.getEdgeNode1(e) : csr.getEdgeNode0(e));
+
+			// 送信元以外の接続している隣接ノード
+			int size = 0;
+			for (int i = 0; i < degree; i++) {
+				if ((alive[i] & bit) != 0L && neighbor[i] != from) {
+					candidate[size++] = i;
+				}
+			}
+			int sendNum = e < 0 ? size : select(rnds[l], candidate, size, fanout);
+
+			// 決定した転送先へ転送
+			msgNum[l] += sendNum;
+			for (int s = 0; s < sendNum; s++) {
+				int i = candidate[s];
+				if ((infection[neighbor[i]] & bit) == 0L) {
+					receive(neighbor[i], bit, edge[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 未受信のレーンでメッセージを受信する
+	 * @param to 受信者
+	 * @param lanes 受信するレーン（いずれも未受信であること）
+	 * @param e 受信したエッジ
+	 */
+	private void receive(int to, long lanes, int e) {
+		infection[to] |= lanes;
+		if (next[to] == 0L) {
+			if ((nextNum + 1) * (long) LANES > nextSender.length) {
+				growNextSender(nextNum + 1);
+			}
+			nextSlot[to] = nextNum;
+			nextList[nextNum++] = to;
+		}
+		next[to] |= lanes;
+		int base = nextSlot[to] * LANES;
+		for (long rest = lanes; rest != 0; rest &= rest - 1) {
+			int l = Long.numberOfTrailingZeros(rest);
+			nextSender[base + l] = e;
+			receivedNodeNum[l]++;
+		}
+	}
+
+	/**
+	 * 次のhopで受信したエッジのバッファを，少なくともslots個の送信待ちのノードの分まで伸ばす
+	 * 配列の長さがintに収まらない場合は例外を投げる
+	 * @param slots 必要な送信待ちのノードの数
+	 */
+	private void growNextSender(int slots) {
+		long size = Math.max((long) slots, 2L * nextSender.length / LANES) * LANES;
+		if (size > Integer.MAX_VALUE - 8) {
+			size = (long) slots * LANES;
+			if (size > Integer.MAX_VALUE - 8) {
+				throw new IllegalStateException("送信待ちのノードが多すぎて，受信したエッジを保持できない: " + slots);
+			}
+		}
+		nextSender = Arrays.copyOf(nextSender, (int) size);
+	}
+
+	/**
+	 * 送信したレーンのメッセージ数を1ずつ増やす
+	 * ビットスライスのカウンタに繰り上がりを伝播させるので，レーン数によらずほぼ定数回の演算で済む
+	 * @param lanes 送信したレーン
+	 */
+	private void countMsg(long lanes) {
+		long carry = lanes;
+		for (int b = 0; carry != 0L; b++) {
+			long sum = msgPlanes[b] ^ carry;
+			carry &= msgPlanes[b];
+			msgPlanes[b] = sum;
+		}
+	}
+
+	/**
+	 * 配列の先頭n個からランダムにk個を選び，配列の先頭に並べる（部分的なFisher-Yates）
+	 * @param rnd 乱数生成器
+	 * @param array 対象の配列
+	 * @param n 要素数
+	 * @param k 選ぶ数
+	 * @return 選んだ数（kとnの小さい方）
+	 */
+	private static int select(Random rnd, int[] array, int n, int k) {
+		int num = Math.min(k, n);
+		for (int i = 0; i < num; i++) {
+			int j = i + rnd.nextInt(n - i);
+			int tmp = array[i];
+			array[i] = array[j];
+			array[j] = tmp;
+		}
+		return num;
+	}
+
+	/**
+	 * 実行中のレーンを返す
+	 * @return 実行中のレーン（ビットlがレーンl）
+	 */
+	public long getRunning() {
+		return running;
+	}
+
+	/**
+	 * レーンの到達率を返す
+	 * @param lane レーン
+	 * @return 到達率
+	 */
+	public float getReachability(int lane) {
+		return (float)receivedNodeNum[lane] / (float)csr.getNodeCount();
+	}
+
+	/**
+	 * レーンで送信したメッセージ数を返す
+	 * @param lane レーン
+	 * @return メッセージ数
+	 */
+	public int getMsgNum(int lane) {
+		int count = msgNum[lane];
+		for (int b = 0; b < msgPlanes.length; b++) {
+			count += (int)(msgPlanes[b] >>> lane & 1L) << b;
+		}
+		return count;
+	}
+
+	/**
+	 * レーンのホップ数を返す
+	 * @param lane レーン
+	 * @return ホップ数
+	 */
+	public int getHopNum(int lane) {
+		return hopNum[lane];
+	}
+}
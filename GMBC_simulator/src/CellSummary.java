@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+/**
+ * パラメータの値（セル）ごとの試行の結果の要約
+ * 指定した列ごとにStreamingStatsを持ち，試行の結果を受け取るたびに更新するので，試行数によらずメモリは一定<br>
+ * 要約の1行は パラメータの値, 試行数, 各列の [平均, 標準偏差, 最小値, 最大値, 50, 90, 99パーセンタイル] になる
+ */
+public class CellSummary {
+	/**
+	 * 出力するパーセンタイル
+	 */
+	private final static double[] QUANTILES = {0.5, 0.9, 0.99};
+
+	/**
+	 * 1つのセルの統計量
+	 */
+	public class Cell {
+		/**
+		 * パラメータの値（最初の試行の結果から取得）
+		 */
+		private float key = Float.NaN;
+
+		/**
+		 * 試行数
+		 */
+		private int trials;
+
+		/**
+		 * 列ごとの統計量
+		 */
+		private StreamingStats[] stats = new StreamingStats[columns.length];
+
+		private Cell() {
+			for (int c = 0; c < stats.length; c++) {
+				stats[c] = new StreamingStats();
+			}
+		}
+
+		/**
+		 * 1試行の結果を加える
+		 * @param record 試行の結果
+		 */
+		public void accept(TrialRecord record) {
+			if (trials++ == 0) {
+				key = record.get(keyColumn).floatValue();
+			}
+			for (int c = 0; c < columns.length; c++) {
+				stats[c].add(record.get(columns[c]).doubleValue());
+			}
+		}
+
+		/**
+		 * 要約の1行を生成する
+		 * @return 要約の行
+		 */
+		public TrialRecord toRecord() {
+			Object[] values = new Object[schema.size()];
+			int i = 0;
+			values[i++] = key;
+			values[i++] = trials;
+			for (StreamingStats s : stats) {
+				values[i++] = (float) s.getMean();
+				values[i++] = (float) s.getStdDev();
+				values[i++] = (float) s.getMin();
+				values[i++] = (float) s.getMax();
+				for (double q : QUANTILES) {
+					values[i++] = (float) s.getQuantile(q);
+				}
+			}
+			return schema.record(values);
+		}
+	}
+
+	/**
+	 * パラメータの列の番号
+	 */
+	private int keyColumn;
+
+	/**
+	 * 要約する列の番号
+	 */
+	private int[] columns;
+
+	/**
+	 * 要約の列の定義
+	 */
+	private ResultSchema schema = new ResultSchema();
+
+	/**
+	 * コンストラクタ
+	 * 試行の結果にない列は要約しない（ドライバによって列が異なるため）
+	 * @param trialSchema 試行の結果の列の定義
+	 * @param key パラメータの列名
+	 * @param names 要約する列名
+	 */
+	public CellSummary(ResultSchema trialSchema, String key, String... names) {
+		keyColumn = trialSchema.indexOf(key);
+		if (keyColumn < 0) {
+			throw new IllegalArgumentException("列がない: " + key);
+		}
+		schema.addFloat(key).addInt("trials");
+		int[] found = new int[names.length];
+		int num = 0;
+		for (String name : names) {
+			int column = trialSchema.indexOf(name);
+			if (column < 0) {
+				continue;
+			}
+			found[num++] = column;
+			schema.addFloat(name + "_mean").addFloat(name + "_sd").addFloat(name + "_min").addFloat(name + "_max");
+			for (double q : QUANTILES) {
+				schema.addFloat(name + "_p" + Math.round(q * 100));
+			}
+		}
+		columns = Arrays.copyOf(found, num);
+	}
+
+	/**
+	 * 要約の列の定義を取得する
+	 * @return 列の定義
+	 */
+	public ResultSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * 新しいセルの統計量を生成する
+	 * @return セルの統計量
+	 */
+	public Cell newCell() {
+		return new Cell();
+	}
+}
@@ -1,5 +1,8 @@
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import org.graphstream.graph.Edge;
@@ -8,15 +11,17 @@ import org.graphstream.graph.Node;
 
 class Node_ {
 	Node node;
-	ArrayList<String> neighter = new ArrayList<String>();
-	boolean isDead;
+	/**
+	 * ノードのID（復帰してもIDは変わらない）
+	 */
+	String id;
+	/**
+	 * 元のグラフでの隣接ノードのインデックス（nodeListでの位置）
+	 */
+	int[] neighter;
 	Node_(Node node) {
 		this.node = node;
-		Iterator<Node> it = node.getNeighborNodeIterator();
-		while(it.hasNext()) {
-			neighter.add(it.next().getId());
-		}
-		this.isDead = false;
+		this.id = node.getId();
 	}
 }
 
@@ -31,26 +36,118 @@ public class ChurnGraph {
 	 */
 	private Graph graph;
 
+	/**
+	 * 対象となるCSR形式のグラフ
+	 * 設定されている場合はグラフの構造は変えず，離脱中のノードにつながるエッジをマスクで表す
+	 */
+	private CsrGraph csr;
+
+	/**
+	 * 切断中のエッジのマスク（CSRのエッジIDで管理）
+	 */
+	private BitSet deadEdges = new BitSet();
+
 	/**
 	 * ノードが離脱，復帰する確率
 	 */
 	private float churnRate;
 
+	/**
+	 * 離脱，復帰するノードを幾何分布の間隔で選ぶサンプラ（churnRateの設定時に生成する）
+	 */
+	private SkipSampler sampler = new SkipSampler(0.0);
+
 	private ArrayList<Node_> nodeList = new ArrayList<Node_>();
 
+	/**
+	 * 離脱中のノード（nodeListのインデックスで管理）
+	 */
+	private BitSet dead = new BitSet();
+
+	/**
+	 * ノードを幾何分布の間隔で飛ばしながら選ぶか
+	 * trueの場合，1stepの計算量は離脱，復帰するノードの数に比例する
+	 */
+	private boolean isSkipSampling = false;
+
+	/**
+	 * エッジの変化を通知するリスナ
+	 */
+	private List<GraphChangeListener> listeners = new ArrayList<GraphChangeListener>();
+
 	// 対象のグラフを設定
 	public void setGraph(Graph graph) {
 		this.graph = graph;
+		this.csr = null;
 		// ノードのリストを更新
 		nodeList.clear();
+		dead.clear();
+		Map<String, Integer> indexOf = new HashMap<String, Integer>();
 		for (Node node : graph.getEachNode()) {
+			indexOf.put(node.getId(), nodeList.size());
 			nodeList.add(new Node_(node));
 		}
+		// 隣接ノードをインデックスで保持する
+		for (Node_ node : nodeList) {
+			node.neighter = new int[node.node.getDegree()];
+			int k = 0;
+			for (Edge edge : node.node.getEachEdge()) {
+				node.neighter[k++] = indexOf.get(edge.getOpposite(node.node).getId());
+			}
+		}
+	}
+
+	/**
+	 * CSR形式のグラフを設定する
+	 * @param csr 対象となるグラフ
+	 */
+	public void setGraph(CsrGraph csr) {
+		this.graph = null;
+		this.csr = csr;
+		nodeList.clear();
+		dead.clear();
+		deadEdges.clear();
+	}
+
+	/**
+	 * 切断中のエッジのマスクを取得する（CSR形式のグラフを設定した場合）
+	 * 離脱中のノードにつながるエッジのビットが立つ．runのたびに更新されるので，プロトコルにはそのまま共有する
+	 * @return 切断中のエッジ（CSRのエッジID）
+	 */
+	public BitSet getEdgeMask() {
+		return deadEdges;
+	}
+
+	/**
+	 * エッジの変化を通知するリスナを追加する
+	 * ノードの離脱，復帰は，そのノードにつながるエッジごとに通知する
+	 * @param listener リスナ
+	 */
+	public void addListener(GraphChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * 乱数生成器を設定する
+	 * @param rnd 乱数生成器
+	 */
+	public void setRandom(Random rnd) {
+		this.rnd = rnd;
+	}
+
+	/**
+	 * 幾何分布の間隔で離脱，復帰するノードを選ぶかを設定する
+	 * ノードごとに乱数を引かないので，変化率が低いほど速い（乱数列は通常の選択とは異なる）
+	 * @param isSkipSampling スキップサンプリングを行うならtrue
+	 */
+	public void setSkipSampling(boolean isSkipSampling) {
+		this.isSkipSampling = isSkipSampling;
 	}
 
 	// churnrateを設定
 	public void setChurnRate(float churnRate) {
 		this.churnRate = churnRate;
+		sampler = new SkipSampler(churnRate);
 	}
 
 	// 初期化
@@ -58,82 +155,176 @@ public class ChurnGraph {
 	// setに統合できそう
 	public void init() {
 		// 切断中の全てのノードを再接続
-		for (Node_ node  : nodeList) {
-			if(node.isDead) {
-				revaivalNode(node);
-			}
+		for (int i = dead.nextSetBit(0); i >= 0; i = dead.nextSetBit(i + 1)) {
+			revaivalNode(i);
 		}
 	}
 
-	// 1stepだけ実行
+	/**
+	 * 1stepだけ実行する
+	 * JFRで記録している場合は，stepごとにDynamicsEventを記録する
+	 * @return 変化したエッジの総数
+	 */
 	public int run() {
+		DynamicsEvent event = DynamicsEvent.TYPE.isEnabled() ? new DynamicsEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		int changeEdgeNum = isSkipSampling ? runInSkip() : runInRandom();
+		if (event != null && event.shouldCommit()) {
+			event.kind = "churn";
+			event.changedEdgeNum = changeEdgeNum;
+			event.commit();
+		}
+		return changeEdgeNum;
+	}
+
+	/**
+	 * 1stepだけ実行する
+	 * 各ノードが確率で離脱，復帰する
+	 * @return 変化したエッジの総数
+	 */
+	private int runInRandom() {
 		// 変化したエッジの総数
 		int changeEdgeNum = 0;
 		// 各ノードが確率で切断，復帰
-		for (Node_ node : nodeList) {
+		for (int i = 0; i < getNodeNum(); i++) {
 			if (rnd.nextDouble() <= churnRate) {
 				// 切断中なら復帰，活動中なら切断
-				if (node.isDead) {
-					changeEdgeNum += revaivalNode(node);
+				if (dead.get(i)) {
+					changeEdgeNum += revaivalNode(i);
 				} else {
-					changeEdgeNum += removeNode(node);
+					changeEdgeNum += removeNode(i);
 				}
 			}
 		}
 		return changeEdgeNum;
 	}
 
+	/**
+	 * 1stepだけ実行する
+	 * 離脱，復帰するノードまで幾何分布の間隔で飛ばしながら選択する
+	 * @return 変化したエッジの総数
+	 */
+	private int runInSkip() {
+		int changeEdgeNum = 0;
+		int size = getNodeNum();
+		for (long i = sampler.first(rnd, size); i < size; i = sampler.next(rnd, i, size)) {
+			// 切断中なら復帰，活動中なら切断
+			if (dead.get((int) i)) {
+				changeEdgeNum += revaivalNode((int) i);
+			} else {
+				changeEdgeNum += removeNode((int) i);
+			}
+		}
+		return changeEdgeNum;
+	}
+
 	/**
 	 * ノードが離脱
-	 * @param node
+	 * @param index ノードのインデックス
+	 * @return 切断したエッジの数
 	 */
-	private int removeNode(Node_ node) {
+	private int removeNode(int index) {
+		if (csr != null) {
+			return removeNodeInCsr(index);
+		}
+		Node_ node = nodeList.get(index);
 		int changeEdgeNum = 0;
 		for (Edge e : node.node.getEachEdge()) {
+			for (GraphChangeListener listener : listeners) {
+				listener.edgeChanged(e.getNode0(), e.getNode1());
+			}
 			changeEdgeNum++;
 		}
 		graph.removeNode(node.node);
-		node.isDead = true;
+		dead.set(index);
 		return changeEdgeNum;
 	}
 
 	/**
 	 * ノードを復帰
-	 * @param node
+	 * 元の隣接ノードのうち，活動中のものとだけ再接続する
+	 * @param index ノードのインデックス
+	 * @return 接続したエッジの数
 	 */
-	private int revaivalNode(Node_ node) {
+	private int revaivalNode(int index) {
+		if (csr != null) {
+			return revaivalNodeInCsr(index);
+		}
+		Node_ node = nodeList.get(index);
 		int changeEdgeNum = 0;
-		String source = node.node.getId();
+		String source = node.id;
 		Node createNode = graph.addNode(source);
 		createNode.setAttribute("x", (int)node.node.getAttribute("x"));
 		createNode.setAttribute("y", (int)node.node.getAttribute("y"));
 		createNode.setAttribute("Infection", (boolean)node.node.getAttribute("Infection"));
-		createNode.setAttribute("ui.style", (String)node.node.getAttribute("ui.style"));
-		for (String target : node.neighter) {
-			if (isDead(target)) {
+		// ui.styleはビュアーで表示する場合のみ設定されている
+		if (node.node.hasAttribute("ui.style")) {
+			createNode.setAttribute("ui.style", (String)node.node.getAttribute("ui.style"));
+		}
+		for (int neighbor : node.neighter) {
+			if (dead.get(neighbor)) {
 				continue;
 			}
-			graph.addEdge(source + target, source, target);
+			String target = nodeList.get(neighbor).id;
+			Edge e = graph.addEdge(source + target, source, target);
+			for (GraphChangeListener listener : listeners) {
+				listener.edgeChanged(e.getNode0(), e.getNode1());
+			}
 			changeEdgeNum++;
 		}
 		node.node = createNode;
-		node.isDead = false;
+		dead.clear(index);
 		return changeEdgeNum;
 	}
 
 	/**
-	 * ノードが生きてるか返す
-	 * NodeListをMapとかにするとサーチしやすいかも
-	 * @param node
-	 * @return
+	 * CSR形式でノードが離脱
+	 * つながる全てのエッジをマスクで切断する
+	 * @param index ノードのインデックス
+	 * @return 切断したエッジの数
 	 */
-	private boolean isDead(String target) {
-		for (Node_ n : nodeList) {
-			if (target.equals(n.node.getId())) {
-				return n.isDead;
+	private int removeNodeInCsr(int index) {
+		int changeEdgeNum = 0;
+		int start = csr.getOffset(index);
+		for (int k = start; k < start + csr.getDegree(index); k++) {
+			int e = csr.getEdgeId(k);
+			if (deadEdges.get(e)) {
+				continue;
+			}
+			deadEdges.set(e);
+			for (GraphChangeListener listener : listeners) {
+				listener.edgeChanged(csr.getEdgeNode0(e), csr.getEdgeNode1(e));
 			}
+			changeEdgeNum++;
 		}
-		return false;
+		dead.set(index);
+		return changeEdgeNum;
+	}
+
+	/**
+	 * CSR形式でノードを復帰
+	 * 隣接ノードのうち，活動中のものとのエッジだけを再接続する
+	 * @param index ノードのインデックス
+	 * @return 接続したエッジの数
+	 */
+	private int revaivalNodeInCsr(int index) {
+		int changeEdgeNum = 0;
+		dead.clear(index);
+		int start = csr.getOffset(index);
+		for (int k = start; k < start + csr.getDegree(index); k++) {
+			if (dead.get(csr.getNeighbor(k))) {
+				continue;
+			}
+			int e = csr.getEdgeId(k);
+			deadEdges.clear(e);
+			for (GraphChangeListener listener : listeners) {
+				listener.edgeChanged(csr.getEdgeNode0(e), csr.getEdgeNode1(e));
+			}
+			changeEdgeNum++;
+		}
+		return changeEdgeNum;
 	}
 
 	/**
@@ -141,6 +332,6 @@ public class ChurnGraph {
 	 * @return ノード総数
 	 */
 	public int getNodeNum() {
-		return nodeList.size();
+		return csr != null ? csr.getNodeCount() : nodeList.size();
 	}
 }
@@ -0,0 +1,289 @@
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+
+/**
+ * グラフの隣接関係を圧縮行格納(CSR)形式の配列で保持するクラス
+ * ノードは0からの連番(GraphStreamのノードのインデックス)で表し，
+ * ノードvの隣接ノードは neighbor[offset[v]] から neighbor[offset[v + 1] - 1] に格納される<br>
+ * GraphStreamのグラフから一度だけスナップショットを取り，以降のシミュレーションは配列上で行う
+ */
+public class CsrGraph {
+	/**
+	 * ノード数
+	 */
+	private int nodeNum;
+
+	/**
+	 * 各ノードの隣接ノードの開始位置（長さはノード数+1）
+	 */
+	private int[] offset;
+
+	/**
+	 * 隣接ノードのインデックス
+	 */
+	private int[] neighbor;
+
+	/**
+	 * 隣接ノードへのエッジのID
+	 * 無向エッジ1本につき，両端のノードの隣接リストに同じIDが入る
+	 */
+	private int[] edgeId;
+
+	/**
+	 * 各エッジの端点
+	 */
+	private int[] edgeNode0;
+	private int[] edgeNode1;
+
+	/**
+	 * 各ノードの座標
+	 */
+	private float[] x;
+	private float[] y;
+
+	/**
+	 * 各ノードのID
+	 * nullの場合は "n" + インデックス をIDとする
+	 */
+	private String[] ids;
+
+	/**
+	 * IDからインデックスへの対応（IDを保持する場合のみ）
+	 */
+	private Map<String, Integer> index;
+
+	/**
+	 * コンストラクタ
+	 * 配列はそのまま保持するので，呼び出し側で変更しないこと
+	 * @param offset 各ノードの隣接ノードの開始位置
+	 * @param neighbor 隣接ノードのインデックス
+	 * @param edgeId 隣接ノードへのエッジのID
+	 * @param edgeNode0 各エッジの端点0
+	 * @param edgeNode1 各エッジの端点1
+	 * @param x x座標
+	 * @param y y座標
+	 * @param ids ノードのID（nullなら "n" + インデックス）
+	 */
+	public CsrGraph(int[] offset, int[] neighbor, int[] edgeId, int[] edgeNode0, int[] edgeNode1,
+			float[] x, float[] y, String[] ids) {
+		this.nodeNum = offset.length - 1;
+		this.offset = offset;
+		this.neighbor = neighbor;
+		this.edgeId = edgeId;
+		this.edgeNode0 = edgeNode0;
+		this.edgeNode1 = edgeNode1;
+		this.x = x;
+		this.y = y;
+		this.ids = ids;
+		if (ids != null) {
+			index = new HashMap<String, Integer>();
+			for (int v = 0; v < nodeNum; v++) {
+				index.put(ids[v], v);
+			}
+		}
+	}
+
+	/**
+	 * GraphStreamのグラフからスナップショットを作成する
+	 * 隣接ノードの並びはノードのエッジの順序（プロトコルが隣接ノードを走査する順序）と同じになる
+	 * @param graph 対象となるグラフ
+	 * @return 作成したスナップショット
+	 */
+	public static CsrGraph from(Graph graph) {
+		int nodeNum = graph.getNodeCount();
+		int edgeNum = graph.getEdgeCount();
+
+		int[] offset = new int[nodeNum + 1];
+		int[] neighbor = new int[edgeNum * 2];
+		int[] edgeId = new int[edgeNum * 2];
+		int[] edgeNode0 = new int[edgeNum];
+		int[] edgeNode1 = new int[edgeNum];
+		float[] x = new float[nodeNum];
+		float[] y = new float[nodeNum];
+		String[] ids = new String[nodeNum];
+
+		// エッジの端点
+		for (Edge edge : graph.getEachEdge()) {
+			edgeNode0[edge.getIndex()] = edge.getNode0().getIndex();
+			edgeNode1[edge.getIndex()] = edge.getNode1().getIndex();
+		}
+
+		// 各ノードの隣接リスト
+		int pos = 0;
+		for (Node node : graph.getEachNode()) {
+			int v = node.getIndex();
+			offset[v] = pos;
+			for (Edge edge : node.getEachEdge()) {
+				neighbor[pos] = edge.getOpposite(node).getIndex();
+				edgeId[pos] = edge.getIndex();
+				pos++;
+			}
+			if (node.hasNumber("x")) x[v] = (float) node.getNumber("x");
+			if (node.hasNumber("y")) y[v] = (float) node.getNumber("y");
+			ids[v] = node.getId();
+		}
+		offset[nodeNum] = pos;
+
+		return new CsrGraph(offset, neighbor, edgeId, edgeNode0, edgeNode1, x, y, ids);
+	}
+
+	/**
+	 * ノード数を取得する
+	 * @return ノード数
+	 */
+	public int getNodeCount() {
+		return nodeNum;
+	}
+
+	/**
+	 * エッジ数を取得する
+	 * @return エッジ数
+	 */
+	public int getEdgeCount() {
+		return edgeNode0.length;
+	}
+
+	/**
+	 * ノードの次数を取得する
+	 * @param node ノードのインデックス
+	 * @return 次数
+	 */
+	public int getDegree(int node) {
+		return offset[node + 1] - offset[node];
+	}
+
+	/**
+	 * ノードの隣接ノードの開始位置を取得する
+	 * @param node ノードのインデックス
+	 * @return 開始位置
+	 */
+	public int getOffset(int node) {
+		return offset[node];
+	}
+
+	/**
+	 * 隣接ノードを取得する
+	 * @param slot 隣接リスト上の位置
+	 * @return 隣接ノードのインデックス
+	 */
+	public int getNeighbor(int slot) {
+		return neighbor[slot];
+	}
+
+	/**
+	 * 隣接ノードへのエッジのIDを取得する
+	 * @param slot 隣接リスト上の位置
+	 * @return エッジのID
+	 */
+	public int getEdgeId(int slot) {
+		return edgeId[slot];
+	}
+
+	/**
+	 * エッジの端点0を取得する
+	 * @param edge エッジのID
+	 * @return ノードのインデックス
+	 */
+	public int getEdgeNode0(int edge) {
+		return edgeNode0[edge];
+	}
+
+	/**
+	 * エッジの端点1を取得する
+	 * @param edge エッジのID
+	 * @return ノードのインデックス
+	 */
+	public int getEdgeNode1(int edge) {
+		return edgeNode1[edge];
+	}
+
+	/**
+	 * x座標を取得する
+	 * @param node ノードのインデックス
+	 * @return x座標
+	 */
+	public float getX(int node) {
+		return x[node];
+	}
+
+	/**
+	 * y座標を取得する
+	 * @param node ノードのインデックス
+	 * @return y座標
+	 */
+	public float getY(int node) {
+		return y[node];
+	}
+
+	/**
+	 * ノードのIDを保持しているか
+	 * @return 保持していればtrue（falseならIDは "n" + インデックス）
+	 */
+	public boolean hasIds() {
+		return ids != null;
+	}
+
+	/**
+	 * ノードのIDを取得する
+	 * @param node ノードのインデックス
+	 * @return ノードのID
+	 */
+	public String getId(int node) {
+		if (ids == null) {
+			return "n" + node;
+		}
+		return ids[node];
+	}
+
+	/**
+	 * ノードのIDからインデックスを取得する
+	 * @param id ノードのID
+	 * @return インデックス．存在しなければ-1
+	 */
+	public int getIndex(String id) {
+		if (ids == null) {
+			// "n" + インデックス の形式
+			try {
+				int v = Integer.parseInt(id.substring(1));
+				return (id.startsWith("n") && v >= 0 && v < nodeNum) ? v : -1;
+			} catch (NumberFormatException | IndexOutOfBoundsException e) {
+				return -1;
+			}
+		}
+		Integer v = index.get(id);
+		return v == null ? -1 : v;
+	}
+
+	/**
+	 * グラフが連結しているかを判定する
+	 * @return 連結していればtrue
+	 */
+	public boolean isConnected() {
+		if (nodeNum == 0) {
+			return true;
+		}
+		// 幅優先探索で到達できるノードを数える
+		BitSet visited = new BitSet(nodeNum);
+		int[] queue = new int[nodeNum];
+		int head = 0;
+		int tail = 0;
+		visited.set(0);
+		queue[tail++] = 0;
+		while (head < tail) {
+			int v = queue[head++];
+			for (int k = offset[v]; k < offset[v + 1]; k++) {
+				int to = neighbor[k];
+				if (!visited.get(to)) {
+					visited.set(to);
+					queue[tail++] = to;
+				}
+			}
+		}
+		return tail == nodeNum;
+	}
+}
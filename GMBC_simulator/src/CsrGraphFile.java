@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * CSR形式のグラフを固定長のバイナリ形式で読み書きするクラス
+ * 読み込みはファイルをメモリマップし，各配列をまとめてコピーするので，グラフの生成や変換よりはるかに速い<br>
+ * 形式（ビッグエンディアン）<br>
+ * ヘッダ: マジック(int, "GMBG") バージョン(int) キーのバイト数(int) キー(UTF-8) ノード数(int) エッジ数(int) IDの有無(int, 0 or 1)<br>
+ * 以降: offset[ノード数+1] neighbor[エッジ数*2] edgeId[エッジ数*2] edgeNode0[エッジ数] edgeNode1[エッジ数] (int)
+ * x[ノード数] y[ノード数] (float)<br>
+ * IDがある場合は最後に，ノードごとに[バイト数(int) ID(UTF-8)]を並べる<br>
+ * キーはグラフの生成条件などを表す文字列で，読み込み時に一致しなければ別のグラフとして扱う
+ */
+public class CsrGraphFile {
+	/**
+	 * マジックナンバー（"GMBG"）
+	 */
+	public final static int MAGIC = 0x474D4247;
+
+	/**
+	 * 形式のバージョン
+	 */
+	public final static int VERSION = 1;
+
+	/**
+	 * グラフを書き出す
+	 * 一時ファイルに書き出してから置き換えるので，途中で中断しても壊れたファイルは残らない
+	 * @param csr 書き出すグラフ
+	 * @param key グラフのキー
+	 * @param path 出力先
+	 * @throws IOException
+	 */
+	public static void write(CsrGraph csr, String key, Path path) throws IOException {
+		int nodeNum = csr.getNodeCount();
+		int edgeNum = csr.getEdgeCount();
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		byte[][] ids = csr.hasIds() ? new byte[nodeNum][] : null;
+
+		// ファイルの大きさ
+		long size = 4L * 6 + keyBytes.length;
+		size += 4L * ((nodeNum + 1) + edgeNum * 4L + edgeNum * 2L + nodeNum * 2L);
+		if (ids != null) {
+			for (int v = 0; v < nodeNum; v++) {
+				ids[v] = csr.getId(v).getBytes(StandardCharsets.UTF_8);
+				size += 4 + ids[v].length;
+			}
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("グラフが大きすぎる: " + size + " bytes");
+		}
+
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+		Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+				buf.putInt(MAGIC);
+				buf.putInt(VERSION);
+				buf.putInt(keyBytes.length);
+				buf.put(keyBytes);
+				buf.putInt(nodeNum);
+				buf.putInt(edgeNum);
+				buf.putInt(ids != null ? 1 : 0);
+
+				for (int v = 0; v < nodeNum; v++) {
+					buf.putInt(csr.getOffset(v));
+				}
+				buf.putInt(nodeNum == 0 ? 0 : csr.getOffset(nodeNum - 1) + csr.getDegree(nodeNum - 1));
+				for (int k = 0; k < edgeNum * 2; k++) {
+					buf.putInt(csr.getNeighbor(k));
+				}
+				for (int k = 0; k < edgeNum * 2; k++) {
+					buf.putInt(csr.getEdgeId(k));
+				}
+				for (int e = 0; e < edgeNum; e++) {
+					buf.putInt(csr.getEdgeNode0(e));
+				}
+				for (int e = 0; e < edgeNum; e++) {
+					buf.putInt(csr.getEdgeNode1(e));
+				}
+				for (int v = 0; v < nodeNum; v++) {
+					buf.putFloat(csr.getX(v));
+				}
+				for (int v = 0; v < nodeNum; v++) {
+					buf.putFloat(csr.getY(v));
+				}
+				if (ids != null) {
+					for (int v = 0; v < nodeNum; v++) {
+						buf.putInt(ids[v].length);
+						buf.put(ids[v]);
+					}
+				}
+				buf.force();
+			}
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * グラフを読み込む
+	 * @param path 入力元
+	 * @param key グラフのキー．nullならキーを確認しない
+	 * @return 読み込んだグラフ．形式のバージョンかキーが一致しなければnull
+	 * @throws IOException 形式が正しくない場合
+	 */
+	public static CsrGraph read(Path path, String key) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("ファイルが大きすぎる: " + path);
+			}
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buf.getInt() != MAGIC) {
+				throw new IOException("CSR形式のグラフのファイルではない: " + path);
+			}
+			if (buf.getInt() != VERSION) {
+				return null;
+			}
+			byte[] keyBytes = new byte[buf.getInt()];
+			buf.get(keyBytes);
+			if (key != null && !key.equals(new String(keyBytes, StandardCharsets.UTF_8))) {
+				return null;
+			}
+			int nodeNum = buf.getInt();
+			int edgeNum = buf.getInt();
+			boolean hasIds = buf.getInt() != 0;
+
+			int[] offset = getInts(buf, nodeNum + 1);
+			int[] neighbor = getInts(buf, edgeNum * 2);
+			int[] edgeId = getInts(buf, edgeNum * 2);
+			int[] edgeNode0 = getInts(buf, edgeNum);
+			int[] edgeNode1 = getInts(buf, edgeNum);
+			float[] x = getFloats(buf, nodeNum);
+			float[] y = getFloats(buf, nodeNum);
+			String[] ids = null;
+			if (hasIds) {
+				ids = new String[nodeNum];
+				for (int v = 0; v < nodeNum; v++) {
+					byte[] id = new byte[buf.getInt()];
+					buf.get(id);
+					ids[v] = new String(id, StandardCharsets.UTF_8);
+				}
+			}
+			return new CsrGraph(offset, neighbor, edgeId, edgeNode0, edgeNode1, x, y, ids);
+		}
+	}
+
+	/**
+	 * バッファの現在位置からint配列をまとめて読み込む
+	 * @param buf バッファ
+	 * @param length 要素数
+	 * @return 読み込んだ配列
+	 */
+	private static int[] getInts(ByteBuffer buf, int length) {
+		int[] array = new int[length];
+		IntBuffer ints = buf.asIntBuffer();
+		ints.get(array);
+		buf.position(buf.position() + length * 4);
+		return array;
+	}
+
+	/**
+	 * バッファの現在位置からfloat配列をまとめて読み込む
+	 * @param buf バッファ
+	 * @param length 要素数
+	 * @return 読み込んだ配列
+	 */
+	private static float[] getFloats(ByteBuffer buf, int length) {
+		float[] array = new float[length];
+		buf.asFloatBuffer().get(array);
+		buf.position(buf.position() + length * 4);
+		return array;
+	}
+}
@@ -0,0 +1,220 @@
+import java.util.Arrays;
+
+/**
+ * 送信待ちの大きさに応じて，push（送信待ちのノードから隣接ノードへ送る）と
+ * pull（未受信のノードが送信待ちの隣接ノードを探す）を切り替えて進めるFlooding
+ * CSR形式のグラフでのみ切り替え，GraphStreamのグラフではFloodingと同じく実行する<br>
+ * メッセージを1通ずつ送る代わりに，各ノードの転送するメッセージ数を
+ * 「接続している隣接ノードの数 - 送信元へのエッジが接続していれば1」として数える<br>
+ * 到達率，ホップ数はFloodingと一致し，メッセージ数も静的なグラフでは一致する
+ * （エッジが変化する場合は，同じhopで複数の送信者から受信したときにどれを送信元とみなすかが異なりうる）
+ */
+class DirectionOptimizingFlooding extends Flooding {
+	/**
+	 * pullへ切り替える閾値
+	 * 送信待ちのノードのエッジ数が，未受信のノードのエッジ数の1/ALPHAを超えたら切り替える
+	 */
+	private final static int ALPHA = 14;
+
+	/**
+	 * pushへ戻す閾値
+	 * 送信待ちのノード数が，全ノード数の1/BETAを下回ったら戻す
+	 */
+	private final static int BETA = 24;
+
+	/**
+	 * 各ノードが受信したhop（ソースノードは0，未受信は-1）
+	 */
+	private int[] level = new int[0];
+
+	/**
+	 * 各ノードが最初に受信したエッジ（ソースノードは-1）
+	 */
+	private int[] senderEdge = new int[0];
+
+	/**
+	 * 送信待ちのノードと，次のhopでの送信待ちのノード
+	 */
+	private int[] frontier = new int[0];
+	private int frontierNum;
+	private int[] nextFrontier = new int[0];
+
+	/**
+	 * pullで進めているか
+	 */
+	private boolean isPull;
+
+	/**
+	 * 未受信のノードの次数の合計（切り替えの判定に利用）
+	 */
+	private long unvisitedEdges;
+
+	/**
+	 * CSR形式のグラフを設定する
+	 * @param csr 対象となるグラフ
+	 */
+	@Override
+	public void setGraph(CsrGraph csr) {
+		super.setGraph(csr);
+		int nodeNum = csr.getNodeCount();
+		level = new int[nodeNum];
+		senderEdge = new int[nodeNum];
+		frontier = new int[nodeNum];
+		nextFrontier = new int[nodeNum];
+	}
+
+	/**
+	 * 初期化．
+	 * ソースノードだけが受信済みで送信待ちの状態にする
+	 */
+	@Override
+	public void init() {
+		if (csr == null) {
+			super.init();
+			return;
+		}
+		Arrays.fill(level, -1);
+		frontierNum = 0;
+		receivedNodeNum = 0;
+		msgNum = 0;
+		hopNum = 0;
+		isPull = false;
+
+		// ソースノードの受信（Protocolと同じく1通と数える）
+		// ソースノードを含まないシャードのグラフでは，送信待ちを空のままにする
+		int source = csr.getIndex("n1");
+		if (source < 0) {
+			return;
+		}
+		level[source] = 0;
+		senderEdge[source] = -1;
+		frontier[0] = source;
+		frontierNum = 1;
+
+		receivedNodeNum = 1;
+		msgNum = 1;
+		unvisitedEdges = 2L * csr.getEdgeCount() - csr.getDegree(source);
+	}
+
+	/**
+	 * 1hopだけ進める
+	 * @return プロトコルが終了するか
+	 */
+	@Override
+	protected boolean step() {
+		if (csr == null) {
+			return super.step();
+		}
+		// ホップ数をカウント
+		hopNum++;
+
+		// 送信待ちのノードが転送するメッセージを数え，pushかpullかを決める
+		long frontierEdges = 0;
+		for (int i = 0; i < frontierNum; i++) {
+			int v = frontier[i];
+			msgNum += countMsg(v);
+			frontierEdges += csr.getDegree(v);
+		}
+		if (!isPull && frontierEdges > unvisitedEdges / ALPHA) {
+			isPull = true;
+		} else if (isPull && frontierNum < csr.getNodeCount() / BETA) {
+			isPull = false;
+		}
+
+		int nextNum = isPull ? pull() : push();
+
+		// 送信待ちを入れ替え
+		int[] tmp = frontier;
+		frontier = nextFrontier;
+		nextFrontier = tmp;
+		frontierNum = nextNum;
+
+		// 待機中のノードがなければプロトコル終了
+		return frontierNum == 0;
+	}
+
+	/**
+	 * 送信待ちの数を取得する
+	 * @return 送信待ちの数
+	 */
+	@Override
+	protected int getFrontierNum() {
+		return csr != null ? frontierNum : super.getFrontierNum();
+	}
+
+	/**
+	 * ノードが転送するメッセージ数
+	 * 接続している全ての隣接ノードのうち，送信元以外へ送る（ソースノードは全てへ送る）
+	 * @param v 転送元
+	 * @return メッセージ数
+	 */
+	private int countMsg(int v) {
+		int e = senderEdge[v];
+		boolean toSender = e >= 0 && (deadEdges == null || !deadEdges.get(e));
+		return getAliveDegree(v) - (toSender ? 1 : 0);
+	}
+
+	/**
+	 * pushで1hop進める
+	 * 送信待ちのノードから，接続している未受信の隣接ノードへ送る
+	 * @return 次のhopで送信待ちになるノードの数
+	 */
+	private int push() {
+		int nextNum = 0;
+		for (int i = 0; i < frontierNum; i++) {
+			int v = frontier[i];
+			int start = csr.getOffset(v);
+			int end = start + csr.getDegree(v);
+			for (int k = start; k < end; k++) {
+				int to = csr.getNeighbor(k);
+				if (level[to] < 0 && isAlive(k)) {
+					receive(to, csr.getEdgeId(k));
+					nextFrontier[nextNum++] = to;
+				}
+			}
+		}
+		return nextNum;
+	}
+
+	/**
+	 * pullで1hop進める
+	 * 未受信のノードが，接続している送信待ちの隣接ノードを1つ見つけたら受信する
+	 * @return 次のhopで送信待ちになるノードの数
+	 */
+	private int pull() {
+		int nextNum = 0;
+		int sendLevel = hopNum - 1;
+		for (int v = 0; v < level.length; v++) {
+			if (level[v] >= 0) {
+				continue;
+			}
+			int start = csr.getOffset(v);
+			int end = start + csr.getDegree(v);
+			for (int k = start; k < end; k++) {
+				if (level[csr.getNeighbor(k)] == sendLevel && isAlive(k)) {
+					receive(v, csr.getEdgeId(k));
+					nextFrontier[nextNum++] = v;
+					break;
+				}
+			}
+		}
+		return nextNum;
+	}
+
+	/**
+	 * メッセージを受信する
+	 * @param to 受信者
+	 * @param e 受信したエッジ
+	 */
+	private void receive(int to, int e) {
+		level[to] = hopNum;
+		senderEdge[to] = e;
+		receivedNodeNum++;
+		unvisitedEdges -= csr.getDegree(to);
+	}
+
+	@Override
+	public String toString() {
+		return "DOFlooding";
+	}
+}
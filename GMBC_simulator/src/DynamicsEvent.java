@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * グラフの変化の1step（TimeVaryingGraph.run, ChurnGraph.run）のJFRイベント
+ */
+@Name("gmbc.Dynamics")
+@Label("Graph Dynamics Step")
+@Category({"GMBC", "Dynamics"})
+@Description("TimeVaryingGraphまたはChurnGraphによるグラフの変化の1step")
+public class DynamicsEvent extends jdk.jfr.Event {
+	/**
+	 * イベントの種類．記録していない間はインスタンスを生成しないよう，呼び出し側で isEnabled を確認する
+	 */
+	final static EventType TYPE = EventType.getEventType(DynamicsEvent.class);
+
+	@Label("Kind")
+	@Description("varying（エッジの切断）またはchurn（ノードの離脱）")
+	String kind;
+
+	@Label("Edges Changed")
+	int changedEdgeNum;
+}
@@ -0,0 +1,305 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 外部のグラフ（測定した無線のトポロジなど）をエッジリストから読み込むクラス
+ * テキストのエッジリストは最初の1回だけ解析してCSR形式のバイナリ（CsrGraphFile）に変換し，
+ * 以降はバイナリをメモリマップして読み込むので，実行のたびにテキストを解析しない<br>
+ * 入力の形式（空白かカンマ区切り，#で始まる行は無視）
+ * <ul>
+ * <li>エッジリスト: 1行に1エッジ「ノードID ノードID」</li>
+ * <li>ノードリスト（任意）: 1行に1ノード「ノードID x座標 y座標」</li>
+ * </ul>
+ * 数字だけのノードIDは，生成したグラフと同じく "n" + ID とする（ソースノードは "n1"）<br>
+ * 自己ループと重複するエッジは除き，エッジの順序はファイルでの順序になる
+ */
+public class EdgeListImporter {
+	/**
+	 * 値の区切り（空白かカンマ）
+	 */
+	private final static Pattern SEPARATOR = Pattern.compile("[\\s,]+");
+
+	/**
+	 * 読み込んだグラフ（エッジリストのパスごと）
+	 */
+	private final static Map<String, CsrGraph> loaded = new HashMap<String, CsrGraph>();
+
+	/**
+	 * エッジリストのグラフを取得する
+	 * 変換済みのバイナリ（エッジリストのパス + ".csr"）が同じ入力から変換したものならそれを読み込み，なければ変換する
+	 * 同じプロセスでは1度だけ読み込む
+	 * @param edgeList エッジリストのパス
+	 * @param nodeList ノードリストのパス（座標がなければnull）
+	 * @return グラフ
+	 * @throws IOException
+	 */
+	public static synchronized CsrGraph load(String edgeList, String nodeList) throws IOException {
+		CsrGraph csr = loaded.get(edgeList);
+		if (csr != null) {
+			return csr;
+		}
+		Path edges = Paths.get(edgeList);
+		Path nodes = nodeList == null ? null : Paths.get(nodeList);
+		Path binary = Paths.get(edgeList + ".csr");
+		String key = getKey(edges, nodes);
+
+		if (Files.exists(binary)) {
+			csr = CsrGraphFile.read(binary, key);
+		}
+		if (csr == null) {
+			csr = convert(edges, nodes, binary);
+		}
+		if (csr.getIndex("n1") < 0) {
+			throw new IOException("ソースノード n1 がグラフにない: " + edgeList);
+		}
+		loaded.put(edgeList, csr);
+		return csr;
+	}
+
+	/**
+	 * エッジリストをCSR形式のバイナリに変換する
+	 * @param edges エッジリストのパス
+	 * @param nodes ノードリストのパス（座標がなければnull）
+	 * @param binary 出力先
+	 * @return 変換したグラフ
+	 * @throws IOException
+	 */
+	public static CsrGraph convert(Path edges, Path nodes, Path binary) throws IOException {
+		CsrGraph csr = parse(edges, nodes);
+		CsrGraphFile.write(csr, getKey(edges, nodes), binary);
+		return csr;
+	}
+
+	/**
+	 * 変換したバイナリのキーを求める
+	 * 入力のファイルの大きさと更新時刻を含むので，入力が変われば変換し直す
+	 * @param edges エッジリストのパス
+	 * @param nodes ノードリストのパス（なければnull）
+	 * @return キー
+	 * @throws IOException
+	 */
+	private static String getKey(Path edges, Path nodes) throws IOException {
+		String key = "edgelist:" + describe(edges);
+		if (nodes != null) {
+			key += ";nodes:" + describe(nodes);
+		}
+		return key;
+	}
+
+	/**
+	 * ファイルを名前，大きさ，更新時刻で表す
+	 * @param path ファイルのパス
+	 * @return ファイルを表す文字列
+	 * @throws IOException
+	 */
+	private static String describe(Path path) throws IOException {
+		return path.getFileName() + "," + Files.size(path) + "," + Files.getLastModifiedTime(path).toMillis();
+	}
+
+	/**
+	 * エッジリストとノードリストを解析する
+	 * @param edges エッジリストのパス
+	 * @param nodes ノードリストのパス（座標がなければnull）
+	 * @return 解析したグラフ
+	 * @throws IOException
+	 */
+	private static CsrGraph parse(Path edges, Path nodes) throws IOException {
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		String[] ids = new String[1024];
+		float[] x = new float[1024];
+		float[] y = new float[1024];
+		int nodeNum = 0;
+
+		// ノードリスト（ファイルでの順序をインデックスとする）
+		if (nodes != null) {
+			try (BufferedReader reader = Files.newBufferedReader(nodes, StandardCharsets.UTF_8)) {
+				String line;
+				int lineNum = 0;
+				while ((line = reader.readLine()) != null) {
+					lineNum++;
+					String[] token = split(line);
+					if (token == null) {
+						continue;
+					}
+					if (token.length < 3) {
+						throw new IOException(nodes + ":" + lineNum + ": 「ノードID x座標 y座標」ではない");
+					}
+					String id = toId(token[0]);
+					if (index.containsKey(id)) {
+						throw new IOException(nodes + ":" + lineNum + ": ノードIDが重複している: " + token[0]);
+					}
+					if (nodeNum == ids.length) {
+						ids = Arrays.copyOf(ids, nodeNum * 2);
+						x = Arrays.copyOf(x, nodeNum * 2);
+						y = Arrays.copyOf(y, nodeNum * 2);
+					}
+					try {
+						x[nodeNum] = Float.parseFloat(token[1]);
+						y[nodeNum] = Float.parseFloat(token[2]);
+					} catch (NumberFormatException e) {
+						throw new IOException(nodes + ":" + lineNum + ": 座標が数値ではない", e);
+					}
+					ids[nodeNum] = id;
+					index.put(id, nodeNum++);
+				}
+			}
+		}
+
+		// エッジリスト（ノードリストにないノードは出現順に追加）
+		int[] node0 = new int[1024];
+		int[] node1 = new int[1024];
+		int edgeNum = 0;
+		try (BufferedReader reader = Files.newBufferedReader(edges, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNum = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNum++;
+				String[] token = split(line);
+				if (token == null) {
+					continue;
+				}
+				if (token.length < 2) {
+					throw new IOException(edges + ":" + lineNum + ": 「ノードID ノードID」ではない");
+				}
+				int[] end = new int[2];
+				for (int i = 0; i < 2; i++) {
+					String id = toId(token[i]);
+					Integer v = index.get(id);
+					if (v == null) {
+						if (nodeNum == ids.length) {
+							ids = Arrays.copyOf(ids, nodeNum * 2);
+							x = Arrays.copyOf(x, nodeNum * 2);
+							y = Arrays.copyOf(y, nodeNum * 2);
+						}
+						ids[nodeNum] = id;
+						v = nodeNum++;
+						index.put(id, v);
+					}
+					end[i] = v;
+				}
+				if (edgeNum == node0.length) {
+					node0 = Arrays.copyOf(node0, edgeNum * 2);
+					node1 = Arrays.copyOf(node1, edgeNum * 2);
+				}
+				node0[edgeNum] = end[0];
+				node1[edgeNum] = end[1];
+				edgeNum++;
+			}
+		}
+
+		// 自己ループと重複するエッジを除く（最初に現れたものを残す）
+		long[] keys = new long[edgeNum];
+		for (int e = 0; e < edgeNum; e++) {
+			keys[e] = getEdgeKey(node0[e], node1[e]);
+		}
+		long[] sorted = keys.clone();
+		Arrays.sort(sorted);
+		BitSet seen = new BitSet(edgeNum);
+		int kept = 0;
+		for (int e = 0; e < edgeNum; e++) {
+			if (node0[e] == node1[e]) {
+				continue;
+			}
+			int k = Arrays.binarySearch(sorted, keys[e]);
+			// 同じキーの先頭の位置にそろえる
+			while (k > 0 && sorted[k - 1] == keys[e]) {
+				k--;
+			}
+			if (seen.get(k)) {
+				continue;
+			}
+			seen.set(k);
+			node0[kept] = node0[e];
+			node1[kept] = node1[e];
+			kept++;
+		}
+		edgeNum = kept;
+
+		// CSR形式へ変換（各ノードの隣接ノードはエッジの順序）
+		int[] offset = new int[nodeNum + 1];
+		for (int e = 0; e < edgeNum; e++) {
+			offset[node0[e] + 1]++;
+			offset[node1[e] + 1]++;
+		}
+		for (int v = 0; v < nodeNum; v++) {
+			offset[v + 1] += offset[v];
+		}
+		int[] neighbor = new int[edgeNum * 2];
+		int[] edgeId = new int[edgeNum * 2];
+		int[] fill = Arrays.copyOf(offset, nodeNum);
+		for (int e = 0; e < edgeNum; e++) {
+			int k0 = fill[node0[e]]++;
+			neighbor[k0] = node1[e];
+			edgeId[k0] = e;
+			int k1 = fill[node1[e]]++;
+			neighbor[k1] = node0[e];
+			edgeId[k1] = e;
+		}
+
+		return new CsrGraph(offset, neighbor, edgeId, Arrays.copyOf(node0, edgeNum), Arrays.copyOf(node1, edgeNum),
+				Arrays.copyOf(x, nodeNum), Arrays.copyOf(y, nodeNum), Arrays.copyOf(ids, nodeNum));
+	}
+
+	/**
+	 * 1行を空白かカンマで区切る
+	 * @param line 行
+	 * @return 区切った値．空行か#で始まる行ならnull
+	 */
+	private static String[] split(String line) {
+		String trimmed = line.trim();
+		if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+			return null;
+		}
+		return SEPARATOR.split(trimmed);
+	}
+
+	/**
+	 * ノードIDを求める
+	 * 数字だけのIDは，生成したグラフと同じく "n" + ID とする
+	 * @param token ファイル上のID
+	 * @return ノードID
+	 */
+	private static String toId(String token) {
+		for (int i = 0; i < token.length(); i++) {
+			if (!Character.isDigit(token.charAt(i))) {
+				return token;
+			}
+		}
+		return "n" + token;
+	}
+
+	/**
+	 * 無向エッジを表すキー（端点の順序によらない）
+	 * @param v0 端点0
+	 * @param v1 端点1
+	 * @return キー
+	 */
+	private static long getEdgeKey(int v0, int v1) {
+		return ((long) Math.min(v0, v1) << 32) | Math.max(v0, v1);
+	}
+
+	/**
+	 * エッジリストをCSR形式のバイナリに変換する
+	 * 使い方: EdgeListImporter エッジリスト [ノードリスト]（出力はエッジリストのパス + ".csr"）
+	 * @param args エッジリストとノードリストのパス
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("使い方: EdgeListImporter エッジリスト [ノードリスト]");
+			return;
+		}
+		Path nodes = args.length > 1 ? Paths.get(args[1]) : null;
+		CsrGraph csr = convert(Paths.get(args[0]), nodes, Paths.get(args[0] + ".csr"));
+		System.out.println(args[0] + ".csr: " + csr.getNodeCount() + " nodes, " + csr.getEdgeCount() + " edges");
+	}
+}
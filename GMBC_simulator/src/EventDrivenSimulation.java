@@ -0,0 +1,424 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * プロトコルを非同期に実行する離散事象シミュレーション
+ * hopごとに全ノードをそろえて進める代わりに，メッセージの到着を時刻つきの事象として二分ヒープで管理し，
+ * 到着した順にプロトコルのchoiceNode（CSR形式）で転送先を選ぶ<br>
+ * 送信のたびにLinkDelayからエッジの遅延を引き，到着時にエッジが切断されていればメッセージは失われる<br>
+ * グラフの変化（TimeVaryingGraph, ChurnGraphのrun）とプロトコルのターンの開始時の処理（updateInTern）は，
+ * 一定の間隔の事象としてメッセージの到着と同じ時間軸で実行する（同じ時刻では到着より先に実行する）<br>
+ * 事象は1件あたり時刻，エッジ，受信者だけを配列に持ち，受信済みのノードへの送信は数えるだけで事象にしないので，
+ * 同時に存在する事象は多くても未受信のノードへの送信の数（エッジ数の2倍）で抑えられる
+ */
+public class EventDrivenSimulation {
+	/**
+	 * 対象となるプロトコル
+	 */
+	private Protocol protocol;
+
+	/**
+	 * 対象となるグラフ
+	 */
+	private CsrGraph csr;
+
+	/**
+	 * 切断中のエッジ（nullなら全てのエッジが接続している）
+	 */
+	private BitSet deadEdges;
+
+	/**
+	 * リンクの遅延の分布
+	 */
+	private LinkDelay delay = LinkDelay.constant(1.0);
+
+	/**
+	 * 遅延の乱数生成器
+	 */
+	private Random rnd = new Random();
+
+	/**
+	 * グラフの変化（nullなら変化しない）
+	 */
+	private Runnable dynamics;
+
+	/**
+	 * グラフの変化とターンの開始時の処理の間隔
+	 */
+	private double interval = 1.0;
+
+	// 事象のヒープ（到着時刻の小さい順）
+	/**
+	 * 到着時刻
+	 */
+	private double[] eventTime = new double[1024];
+
+	/**
+	 * 送信したエッジ
+	 */
+	private int[] eventEdge = new int[1024];
+
+	/**
+	 * 受信者
+	 */
+	private int[] eventTo = new int[1024];
+
+	/**
+	 * 事象の数
+	 */
+	private int eventNum;
+
+	// 実行に利用する変数
+	/**
+	 * 受信済みのノード
+	 */
+	private BitSet infection = new BitSet();
+
+	/**
+	 * 各ノードが最初に受信したときのホップ数
+	 */
+	private int[] hop;
+
+	/**
+	 * choiceNodeが選択したノードを書き込むバッファ
+	 */
+	private int[] sendBuffer;
+
+	/**
+	 * 選択したノードの印（転送ごとの番号を書き込み，隣接リストからエッジを求めるのに利用）
+	 */
+	private int[] selected;
+	private int selectStamp;
+
+	// 取得するデータ
+	/**
+	 * 受信したノードの受信時刻（受信した順なので昇順に並ぶ）
+	 * ソースノードは含まない
+	 */
+	private double[] deliveryTime;
+
+	/**
+	 * メッセージを受信したノードの数（ソースノードを含む）
+	 */
+	private int receivedNodeNum;
+
+	/**
+	 * メッセージ数
+	 */
+	private int msgNum;
+
+	/**
+	 * 切断により失われたメッセージ数
+	 */
+	private int lostNum;
+
+	/**
+	 * 受信したノードのホップ数の最大値
+	 */
+	private int hopNum;
+
+	/**
+	 * 同時に存在した事象の最大数
+	 */
+	private int maxInFlight;
+
+	/**
+	 * 最後に受信した時刻
+	 */
+	private double finishTime;
+
+	/**
+	 * コンストラクタ
+	 * プロトコルにはこのグラフを設定する
+	 * @param protocol 対象となるプロトコル
+	 * @param csr 対象となるグラフ
+	 */
+	public EventDrivenSimulation(Protocol protocol, CsrGraph csr) {
+		this.protocol = protocol;
+		this.csr = csr;
+		protocol.setGraph(csr);
+		int nodeNum = csr.getNodeCount();
+		int maxDegree = 0;
+		for (int v = 0; v < nodeNum; v++) {
+			maxDegree = Math.max(maxDegree, csr.getDegree(v));
+		}
+		hop = new int[nodeNum];
+		sendBuffer = new int[maxDegree];
+		selected = new int[nodeNum];
+		deliveryTime = new double[nodeNum];
+	}
+
+	/**
+	 * 切断中のエッジのマスクを設定する
+	 * プロトコルにも同じマスクを設定する
+	 * @param deadEdges 切断中のエッジ．TimeVaryingGraph, ChurnGraphのgetEdgeMask()を渡す
+	 */
+	public void setEdgeMask(BitSet deadEdges) {
+		this.deadEdges = deadEdges;
+		protocol.setEdgeMask(deadEdges);
+	}
+
+	/**
+	 * リンクの遅延の分布を設定する
+	 * @param delay 遅延の分布
+	 */
+	public void setDelay(LinkDelay delay) {
+		this.delay = delay;
+	}
+
+	/**
+	 * 遅延の乱数生成器を設定する
+	 * 転送先の選択はプロトコルの乱数生成器で行う
+	 * @param rnd 乱数生成器
+	 */
+	public void setRandom(Random rnd) {
+		this.rnd = rnd;
+	}
+
+	/**
+	 * グラフの変化を設定する
+	 * 時刻 0, interval, 2*interval, ... に実行する
+	 * @param dynamics グラフを1step変化させる処理（tvg::run など）．nullなら変化しない
+	 * @param interval 変化の間隔
+	 */
+	public void setDynamics(Runnable dynamics, double interval) {
+		this.dynamics = dynamics;
+		this.interval = interval;
+	}
+
+	/**
+	 * 初期化．
+	 * プロトコルを初期化し，ソースノードだけが受信済みの状態にする
+	 */
+	public void init() {
+		protocol.init();
+		infection.clear();
+		eventNum = 0;
+		receivedNodeNum = 1;
+		msgNum = 1;
+		lostNum = 0;
+		hopNum = 0;
+		maxInFlight = 0;
+		finishTime = 0;
+	}
+
+	/**
+	 * シミュレーションの実行．
+	 * 事象がなくなるまで進める
+	 */
+	public void run() {
+		double tick = 0;
+
+		// ソースノードの転送（時刻0の変化の後）
+		int source = csr.getIndex("n1");
+		infection.set(source);
+		hop[source] = 0;
+		tick = runTick(tick);
+		forward(-1, source, 0);
+
+		while (eventNum > 0) {
+			double time = eventTime[0];
+			// 到着より前の変化を実行
+			while (tick <= time) {
+				tick = runTick(tick);
+			}
+			int e = eventEdge[0];
+			int to = eventTo[0];
+			poll();
+
+			// 送信中にエッジが切断されていれば失われる
+			if (deadEdges != null && deadEdges.get(e)) {
+				lostNum++;
+				continue;
+			}
+			// 受信済みであれば処理しない
+			if (infection.get(to)) {
+				continue;
+			}
+			int from = csr.getEdgeNode0(e) == to ? csr.getEdgeNode1(e) : csr.getEdgeNode0(e);
+			infection.set(to);
+			hop[to] = hop[from] + 1;
+			hopNum = Math.max(hopNum, hop[to]);
+			deliveryTime[receivedNodeNum - 1] = time;
+			receivedNodeNum++;
+			finishTime = time;
+			forward(from, to, time);
+		}
+	}
+
+	/**
+	 * グラフの変化とターンの開始時の処理を実行する
+	 * @param tick 実行する時刻
+	 * @return 次に実行する時刻
+	 */
+	private double runTick(double tick) {
+		if (dynamics != null) {
+			dynamics.run();
+		}
+		// ターンの開始時の処理で送るメッセージ（GMBCのMBCの交換）も数える
+		int before = protocol.getMsgNum();
+		protocol.updateInTern();
+		msgNum += protocol.getMsgNum() - before;
+		return tick + interval;
+	}
+
+	/**
+	 * 受信したノードが転送する
+	 * プロトコルのchoiceNodeで選んだノードへ，エッジごとに遅延を引いて送信する
+	 * @param from 送信元（ソースノードなら-1）
+	 * @param receive 受信者（転送元）
+	 * @param time 受信した時刻
+	 */
+	private void forward(int from, int receive, double time) {
+		int sendNum = from < 0 ? protocol.firstChoiceNode(receive, sendBuffer)
+				: protocol.choiceNode(from, receive, sendBuffer);
+		msgNum += sendNum;
+
+		// 選んだノードへのエッジを隣接リストから求める（受信済みのノードへは事象にしない）
+		selectStamp++;
+		int pending = 0;
+		for (int s = 0; s < sendNum; s++) {
+			if (!infection.get(sendBuffer[s])) {
+				selected[sendBuffer[s]] = selectStamp;
+				pending++;
+			}
+		}
+		int start = csr.getOffset(receive);
+		for (int k = start; k < start + csr.getDegree(receive) && pending > 0; k++) {
+			int to = csr.getNeighbor(k);
+			if (selected[to] == selectStamp) {
+				int e = csr.getEdgeId(k);
+				add(time + delay.sample(e, rnd), e, to);
+				selected[to] = 0;
+				pending--;
+			}
+		}
+	}
+
+	/**
+	 * 事象をヒープに追加する
+	 * @param time 到着時刻
+	 * @param edge 送信したエッジ
+	 * @param to 受信者
+	 */
+	private void add(double time, int edge, int to) {
+		if (eventNum == eventTime.length) {
+			eventTime = Arrays.copyOf(eventTime, eventNum * 2);
+			eventEdge = Arrays.copyOf(eventEdge, eventNum * 2);
+			eventTo = Arrays.copyOf(eventTo, eventNum * 2);
+		}
+		// 親より早ければ上へ移動
+		int i = eventNum++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (eventTime[parent] <= time) {
+				break;
+			}
+			eventTime[i] = eventTime[parent];
+			eventEdge[i] = eventEdge[parent];
+			eventTo[i] = eventTo[parent];
+			i = parent;
+		}
+		eventTime[i] = time;
+		eventEdge[i] = edge;
+		eventTo[i] = to;
+		maxInFlight = Math.max(maxInFlight, eventNum);
+	}
+
+	/**
+	 * ヒープの先頭の事象を取り除く
+	 */
+	private void poll() {
+		eventNum--;
+		if (eventNum == 0) {
+			return;
+		}
+		double time = eventTime[eventNum];
+		int edge = eventEdge[eventNum];
+		int to = eventTo[eventNum];
+		// 子より遅ければ下へ移動
+		int i = 0;
+		int half = eventNum >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < eventNum && eventTime[child + 1] < eventTime[child]) {
+				child++;
+			}
+			if (time <= eventTime[child]) {
+				break;
+			}
+			eventTime[i] = eventTime[child];
+			eventEdge[i] = eventEdge[child];
+			eventTo[i] = eventTo[child];
+			i = child;
+		}
+		eventTime[i] = time;
+		eventEdge[i] = edge;
+		eventTo[i] = to;
+	}
+
+	/**
+	 * 到達率（全ノードのうち，どれだけのノードがメッセージを受け取ったか）を返す
+	 * @return 到達率
+	 */
+	public float getReachability() {
+		return (float) receivedNodeNum / (float) csr.getNodeCount();
+	}
+
+	/**
+	 * 送信したメッセージ数を返す（失われたものを含む）
+	 * @return メッセージ数
+	 */
+	public int getMsgNum() {
+		return msgNum;
+	}
+
+	/**
+	 * 送信中にエッジが切断されて失われたメッセージ数を返す
+	 * @return 失われたメッセージ数
+	 */
+	public int getLostNum() {
+		return lostNum;
+	}
+
+	/**
+	 * ホップ数を返す
+	 * 同期の実行と同じく，最後に受信したノードの転送までを数える（受信したノードのホップ数の最大値 + 1）
+	 * @return ホップ数
+	 */
+	public int getHopNum() {
+		return hopNum + 1;
+	}
+
+	/**
+	 * 最後のノードが受信した時刻を返す
+	 * @return 時刻
+	 */
+	public double getFinishTime() {
+		return finishTime;
+	}
+
+	/**
+	 * 受信した時刻のパーセンタイルを返す（ソースノードを除く，受信したノードのみ）
+	 * @param q 割合（0から1．0.5なら中央値）
+	 * @return 時刻．ソースノードしか受信していなければ0
+	 */
+	public double getDeliveryTime(double q) {
+		int n = receivedNodeNum - 1;
+		if (n == 0) {
+			return 0;
+		}
+		// 受信した順に記録しているので並べ替えは不要（nearest-rank）
+		int rank = (int) Math.ceil(q * n);
+		return deliveryTime[Math.max(rank, 1) - 1];
+	}
+
+	/**
+	 * 同時に存在した事象の最大数を返す
+	 * @return 事象の数
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+}
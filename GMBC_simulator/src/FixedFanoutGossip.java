@@ -1,9 +1,8 @@
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.Queue;
 
+import org.graphstream.graph.Edge;
 import org.graphstream.graph.Node;
 
 /**
@@ -27,6 +26,14 @@ public class FixedFanoutGossip extends Protocol {
 		this.fanout = fanout;
 	}
 
+	/**
+	 * Fanout数を返す
+	 * @return Fanout数
+	 */
+	public int getFanout() {
+		return fanout;
+	}
+
 	/**
 	 * 転送するノードを選択する
 	 * 隣接ノードからランダムにFanout個選択する
@@ -39,20 +46,19 @@ public class FixedFanoutGossip extends Protocol {
 		// 転送するノード
 		Queue<Node> sendNodes = new ArrayDeque<Node>();
 
-		// 隣接ノードをList型へ変換してシャッフル
+		// 隣接ノードをList型へ変換
 		ArrayList<Node> tmpList = new ArrayList<Node>();
-		Iterator<? extends Node> neighbor = msg.getTo().getNeighborNodeIterator();
-		while(neighbor.hasNext()) {
-			Node to = neighbor.next();
+		Node receive = msg.getTo();
+		for (Edge edge : receive.getEachEdge()) {
+			Node to = edge.getOpposite(receive);
 			if (to == msg.getFrom()) {
 				continue;
 			}
 			tmpList.add(to);
 		}
-		Collections.shuffle(tmpList);
 
-		// 頭からFanout個だけ取り出す
-		int sendNum = Math.min(fanout, tmpList.size());
+		// ランダムにFanout個だけ選んで取り出す
+		int sendNum = select(tmpList, fanout);
 		for (int i = 0; i < sendNum; i++) {
 			sendNodes.add(tmpList.get(i));
 		}
@@ -60,6 +66,37 @@ public class FixedFanoutGossip extends Protocol {
 		return sendNodes;
 	}
 
+	/**
+	 * CSR形式で転送するノードを選択する
+	 * 隣接ノードからランダムにFanout個選択する
+	 * @param from 送信元
+	 * @param receive 転送元
+	 * @param sendNodes 選択したノードを書き込むバッファ
+	 * @return 選択したノードの数
+	 */
+	@Override
+	protected int choiceNode(int from, int receive, int[] sendNodes) {
+		int start = csr.getOffset(receive);
+		int degree = csr.getDegree(receive);
+
+		// 送信元以外の隣接ノードをバッファへ書き込む
+		int size = 0;
+		for (int k = start; k < start + degree; k++) {
+			// 切断中のエッジは使わない
+			if (!isAlive(k)) {
+				continue;
+			}
+			int to = csr.getNeighbor(k);
+			if (to == from) {
+				continue;
+			}
+			sendNodes[size++] = to;
+		}
+
+		// バッファの先頭にFanout個だけ選ぶ
+		return select(sendNodes, size, fanout);
+	}
+
 	@Override
 	protected void updateInTern() {
 		// TODO 自動生成されたメソッド・スタブ
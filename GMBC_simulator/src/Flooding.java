@@ -1,7 +1,7 @@
 import java.util.ArrayDeque;
-import java.util.Iterator;
 import java.util.Queue;
 
+import org.graphstream.graph.Edge;
 import org.graphstream.graph.Node;
 
 /**
@@ -21,9 +21,9 @@ class Flooding extends Protocol {
 		Queue<Node> sendNodes = new ArrayDeque<Node>();
 
 		// 転送するノードを選択する
-		Iterator<? extends Node> neighbor = msg.getTo().getNeighborNodeIterator();
-		while(neighbor.hasNext()) {
-			Node to = neighbor.next();
+		Node receive = msg.getTo();
+		for (Edge edge : receive.getEachEdge()) {
+			Node to = edge.getOpposite(receive);
 			// 送信元へは転送しない
 			if (to == msg.getFrom()) {
 				continue;
@@ -33,6 +33,36 @@ class Flooding extends Protocol {
 		return sendNodes;
 	}
 
+	/**
+	 * CSR形式で転送するノードを選択する．
+	 * 送信元以外の全てのノードに対して転送する
+	 * @param from 送信元
+	 * @param receive 転送元
+	 * @param sendNodes 選択したノードを書き込むバッファ
+	 * @return 選択したノードの数
+	 */
+	@Override
+	protected int choiceNode(int from, int receive, int[] sendNodes) {
+		int start = csr.getOffset(receive);
+		int degree = csr.getDegree(receive);
+
+		// 転送するノード
+		int sendNum = 0;
+		for (int k = start; k < start + degree; k++) {
+			// 切断中のエッジは使わない
+			if (!isAlive(k)) {
+				continue;
+			}
+			int to = csr.getNeighbor(k);
+			// 送信元へは転送しない
+			if (to == from) {
+				continue;
+			}
+			sendNodes[sendNum++] = to;
+		}
+		return sendNum;
+	}
+
 	@Override
 	protected void updateInTern() {
 		// TODO 自動生成されたメソッド・スタブ
@@ -1,10 +1,12 @@
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Queue;
-import java.util.Random;
+import java.util.Set;
 
+import org.graphstream.graph.Edge;
 import org.graphstream.graph.Graph;
 import org.graphstream.graph.Node;
 
@@ -15,12 +17,7 @@ import org.graphstream.graph.Node;
  * メッセージを受け取ったノードが，ノードがもつMBCに従ってメッセージの転送を行う
  * パラメータにFanoutを持ち，隣接ノードを選択する際に選ぶノードの数を表す
  */
-public class GossipForMBC extends Protocol {
-	/**
-	 * 乱数生成器
-	 */
-	private Random rnd = new Random();
-
+public class GossipForMBC extends Protocol implements GraphChangeListener {
 	private MBCGenerator mbcGenerator = new MBCGenerator();
 
 	/**
@@ -33,17 +30,169 @@ public class GossipForMBC extends Protocol {
 	 */
 	private float updateRate;
 
+	/**
+	 * 各ノードのMBC（CSR形式での実行に利用）
+	 */
+	private MBC[] mbcs;
+
+	/**
+	 * グラフの変化を購読してMBCを差分更新するか
+	 * trueの場合，変化の影響を受けたノードのMBCだけを再生成する
+	 */
+	private boolean incremental = false;
+
+	/**
+	 * MBCが現在のグラフと一致していない可能性のあるノードのID
+	 */
+	private Set<String> dirty = new HashSet<String>();
+
+	/**
+	 * MBCが現在のグラフと一致していない可能性のあるノード（CSR形式での実行に利用）
+	 */
+	private BitSet dirtyNodes = new BitSet();
+
+	/**
+	 * 優先度の低い隣接ノードを一時的に置くバッファ（CSR形式での実行に利用）
+	 * 次数の最大値まで伸ばして使い回す
+	 */
+	private int[] second = new int[0];
+
+	/**
+	 * 共通の隣接ノードを探すための印（CSR形式での実行に利用）
+	 */
+	private int[] mark = new int[0];
+	private int stamp = 0;
+
 	public void init() {
 		super.init();
+		if (csr != null) {
+			// MBCを更新（差分更新では変化の影響を受けたノードのみ）
+			for (int v = 0; v < mbcs.length; v++) {
+				if (isDirty(v)) {
+					updateMbc(v);
+				}
+			}
+			return;
+		}
 		// MBCを更新
 		Iterator<? extends Node> nodes = graph.getNodeIterator();
 		while(nodes.hasNext()) {
 			Node node = nodes.next();
-			// MBCを更新
-			node.setAttribute("MBC", mbcGenerator.generate(node));
+			// 変化の影響を受けたノードだけMBCを更新
+			if (isDirty(node)) {
+				updateMbc(node);
+			}
 		}
 	}
 
+	/**
+	 * TimeVaryingGraphの変化を購読し，MBCを差分更新する
+	 * @param tvg 購読するTimeVaryingGraph
+	 */
+	public void subscribe(TimeVaryingGraph tvg) {
+		tvg.addListener(this);
+		incremental = true;
+	}
+
+	/**
+	 * ChurnGraphの変化を購読し，MBCを差分更新する
+	 * @param cg 購読するChurnGraph
+	 */
+	public void subscribe(ChurnGraph cg) {
+		cg.addListener(this);
+		incremental = true;
+	}
+
+	/**
+	 * エッジの変化により，MBCが変わりうるノードを記録する
+	 * ノードのMBCはそのノードのエッジと隣接ノード間のエッジだけで決まるので，
+	 * 影響を受けるのは両端のノードと，両端に共通する隣接ノードだけである
+	 * @param node0 エッジの端点
+	 * @param node1 エッジの端点
+	 */
+	@Override
+	public void edgeChanged(Node node0, Node node1) {
+		dirty.add(node0.getId());
+		dirty.add(node1.getId());
+		for (Edge edge : node0.getEachEdge()) {
+			Node common = edge.getOpposite(node0);
+			if (common != node1 && common.hasEdgeBetween(node1)) {
+				dirty.add(common.getId());
+			}
+		}
+	}
+
+	/**
+	 * CSR形式のグラフでのエッジの変化により，MBCが変わりうるノードを記録する
+	 * マスクに関わらず元のグラフで共通する隣接ノードを記録するので，影響を受けるノードを漏らさない
+	 * @param node0 エッジの端点のインデックス
+	 * @param node1 エッジの端点のインデックス
+	 */
+	@Override
+	public void edgeChanged(int node0, int node1) {
+		dirtyNodes.set(node0);
+		dirtyNodes.set(node1);
+		// node1の隣接ノードに印を付け，node0の隣接ノードのうち印があるものを記録
+		stamp++;
+		int start1 = csr.getOffset(node1);
+		for (int k = start1; k < start1 + csr.getDegree(node1); k++) {
+			mark[csr.getNeighbor(k)] = stamp;
+		}
+		int start0 = csr.getOffset(node0);
+		for (int k = start0; k < start0 + csr.getDegree(node0); k++) {
+			int common = csr.getNeighbor(k);
+			if (mark[common] == stamp) {
+				dirtyNodes.set(common);
+			}
+		}
+	}
+
+	/**
+	 * ノードのMBCを再生成する必要があるか
+	 * @param node ノード
+	 * @return 再生成する必要があればtrue
+	 */
+	private boolean isDirty(Node node) {
+		return !incremental || dirty.contains(node.getId()) || !node.hasAttribute("MBC");
+	}
+
+	/**
+	 * CSR形式でノードのMBCを再生成する必要があるか
+	 * @param v ノードのインデックス
+	 * @return 再生成する必要があればtrue
+	 */
+	private boolean isDirty(int v) {
+		return !incremental || dirtyNodes.get(v);
+	}
+
+	/**
+	 * ノードのMBCを再生成する
+	 * @param node ノード
+	 */
+	private void updateMbc(Node node) {
+		node.setAttribute("MBC", mbcGenerator.generate(node));
+		dirty.remove(node.getId());
+	}
+
+	/**
+	 * CSR形式でノードのMBCを再生成する
+	 * 切断中のエッジは除いて生成する
+	 * @param v ノードのインデックス
+	 */
+	private void updateMbc(int v) {
+		mbcs[v] = mbcGenerator.generate(csr, deadEdges, v);
+		dirtyNodes.clear(v);
+	}
+
+	/**
+	 * CSR形式でのノードのMBCを取得する
+	 * @param v ノードのインデックス
+	 * @return MBC
+	 */
+	MBC getMbc(int v) {
+		return mbcs[v];
+	}
+
 	/**
 	 * コンストラクタ
 	 * ノードがメッセージを転送する数であるFanout数を設定する
@@ -63,9 +212,26 @@ public class GossipForMBC extends Protocol {
 	public void setGraph(Graph graph) {
 		super.setGraph(graph);
 		// 各ノードのMBCを生成する
-		MBCGenerator mbcGene = new MBCGenerator();
 		for (Node node : graph.getNodeSet()) {
-			node.setAttribute("MBC", mbcGene.generate(node));
+			updateMbc(node);
+		}
+	}
+
+	/**
+	 * CSR形式のグラフを設定する
+	 * 各ノードのMBCを生成する
+	 * @param csr 対象となるグラフ
+	 */
+	@Override
+	public void setGraph(CsrGraph csr) {
+		super.setGraph(csr);
+		mark = new int[csr.getNodeCount()];
+		stamp = 0;
+		// 各ノードのMBCを生成する
+		mbcs = new MBC[csr.getNodeCount()];
+		dirtyNodes.clear();
+		for (int v = 0; v < mbcs.length; v++) {
+			updateMbc(v);
 		}
 	}
 
@@ -82,9 +248,10 @@ public class GossipForMBC extends Protocol {
 		// 受信者
 		Node receive = msg.getTo();
 
-		// 更新が確実ならMBCを更新
-		if (updateRate == 1.0f) {
-			receive.setAttribute("MBC", mbcGenerator.generate(receive));
+		// 更新が確実ならMBCを更新（差分更新では変化があった場合のみ）
+		// 復帰したノードなどMBCを持たない場合も生成する
+		if ((updateRate == 1.0f && isDirty(receive)) || !receive.hasAttribute("MBC")) {
+			updateMbc(receive);
 		}
 
 		// 転送するノード
@@ -98,17 +265,20 @@ public class GossipForMBC extends Protocol {
 
 		// 受信者のMBC
 		MBC mbc = (MBC)receive.getAttribute("MBC");
+		int fromSlot = mbc.getSlot(msg.getFrom().getId(), -1);
 
 		// MBCを参考に各隣接ノードの優先度を振り分け
-		Iterator<? extends Node> neighbor = receive.getNeighborNodeIterator();
-		while(neighbor.hasNext()) {
-			Node to = neighbor.next();
+		// MBCのスロットは生成時のエッジの順序なので，順序が変わっていなければk番目のスロットになる
+		int k = -1;
+		for (Edge edge : receive.getEachEdge()) {
+			Node to = edge.getOpposite(receive);
+			k++;
 			// 送信者へは送り返さない
 			if (to == msg.getFrom()) {
 				continue;
 			}
 			// それ以外は距離によって優先度を変える
-			int dist = mbc.getDist(msg.getFrom(), to);
+			int dist = mbc.getDist(fromSlot, mbc.getSlot(to.getId(), k));
 			if (mbc.isInf(dist)) {
 				first.add(to);
 			} else {
@@ -116,20 +286,77 @@ public class GossipForMBC extends Protocol {
 			}
 		}
 
-		//順序を入れ替えて合体
-		Collections.shuffle(first);
-		Collections.shuffle(second);
-		first.addAll(second);
-
-		// 頭からFanout個だけ取り出す
-		int sendNum = Math.min(fanout, first.size());
-		for (int i = 0; i < sendNum; i++) {
+		// firstから優先してFanout個だけ選んで取り出す
+		int firstNum = select(first, fanout);
+		for (int i = 0; i < firstNum; i++) {
 			sendNodes.add(first.get(i));
 		}
+		int secondNum = select(second, fanout - firstNum);
+		for (int i = 0; i < secondNum; i++) {
+			sendNodes.add(second.get(i));
+		}
 
 		return sendNodes;
 	}
 
+	/**
+	 * CSR形式で転送するノードを選択する
+	 * choiceNode(Message)と同じく，MBCに従ってFanout個選択する
+	 * @param from 送信元
+	 * @param receive 転送元
+	 * @param sendNodes 選択したノードを書き込むバッファ
+	 * @return 選択したノードの数
+	 */
+	@Override
+	protected int choiceNode(int from, int receive, int[] sendNodes) {
+		// 更新が確実ならMBCを更新（差分更新では変化があった場合のみ）
+		if (updateRate == 1.0f && isDirty(receive)) {
+			updateMbc(receive);
+		}
+
+		int start = csr.getOffset(receive);
+		int degree = csr.getDegree(receive);
+
+		// 隣接ノードを2つに区分
+		// 優先して送るノード（バッファの先頭に書き込む）
+		int[] first = sendNodes;
+		int firstNum = 0;
+		// firstを送り切った後に選ばられるノード
+		if (second.length < degree) {
+			second = new int[degree];
+		}
+		int secondNum = 0;
+
+		// 受信者のMBC
+		MBC mbc = mbcs[receive];
+		int fromSlot = mbc.getSlot(from, -1);
+
+		// MBCを参考に各隣接ノードの優先度を振り分け
+		// MBCのスロットは生成時に接続していた隣接ノードの順序なので，変化がなければslot番目になる
+		int slot = -1;
+		for (int k = start; k < start + degree; k++) {
+			// 切断中のエッジは使わない
+			if (!isAlive(k)) {
+				continue;
+			}
+			int to = csr.getNeighbor(k);
+			slot++;
+			// 送信者へは送り返さない
+			if (to == from) {
+				continue;
+			}
+			// それ以外は距離によって優先度を変える
+			int dist = mbc.getDist(fromSlot, mbc.getSlot(to, slot));
+			if (mbc.isInf(dist)) {
+				first[firstNum++] = to;
+			} else {
+				second[secondNum++] = to;
+			}
+		}
+
+		// firstから優先してFanout個だけ選び，バッファの先頭に並べる
+		return select(first, firstNum, second, secondNum, fanout);
+	}
 
 	/**
 	 * 各ターンの開始時に更新を行う
@@ -137,6 +364,10 @@ public class GossipForMBC extends Protocol {
 	 */
 	@Override
 	protected void updateInTern() {
+		if (csr != null) {
+			updateInTernInCsr();
+			return;
+		}
 		Iterator<? extends Node> nodes = graph.getNodeIterator();
 		while(nodes.hasNext()) {
 			Node node = nodes.next();
@@ -149,13 +380,36 @@ public class GossipForMBC extends Protocol {
 					continue;
 				}
 
-				node.setAttribute("MBC", mbcGenerator.generate(node));
+				// 差分更新では変化の影響を受けたノードだけ再生成する（変化がなければ同じMBCになる）
+				if (isDirty(node)) {
+					updateMbc(node);
+				}
 				// メッセージ数を増加
 				msgNum += node.getEdgeSet().size();
 			}
 		}
 	}
 
+	/**
+	 * CSR形式での各ターンの開始時の更新
+	 */
+	private void updateInTernInCsr() {
+		// 担当するノードのみ（シャードのグラフでは他のシャードのノードを除く）
+		for (int v = 0; v < localNodeNum; v++) {
+			// 確率でMBCを更新
+			if (rnd.nextDouble() <= updateRate) {
+
+				// 更新が確実ならスルー（転送前に更新する）
+				// 差分更新では変化の影響を受けたノードだけ再生成する（変化がなければ同じMBCになる）
+				if (updateRate != 1.0f && isDirty(v)) {
+					updateMbc(v);
+				}
+				// メッセージ数を増加
+				msgNum += getAliveDegree(v);
+			}
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "GMBG_" + fanout;
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 生成したグラフを再利用するためのキャッシュ
+ * グラフは生成条件（ノード数，半径，範囲）とグラフのシードで決まるので，これをキーにして保持する<br>
+ * メモリ上ではSoftReferenceで保持し，ディレクトリを指定した場合はCsrGraphFileの形式でディスクにも保存する<br>
+ * 同じシードで実行すれば，プロトコルごとの実行や別のプロセスでも同じグラフを生成せずに読み込める<br>
+ * 生成条件や生成の方法（GENERATOR_VERSION）が変わればキーが変わるので，古いファイルは使われない
+ */
+public class GraphCache {
+	/**
+	 * グラフの生成方法のバージョン
+	 * ジェネレータが同じシードから異なるグラフを生成するように変わった場合は上げる
+	 */
+	public final static int GENERATOR_VERSION = 1;
+
+	/**
+	 * システムプロパティ graphCache で指定したディレクトリを使うキャッシュ
+	 * 指定がなければメモリ上でのみ保持する
+	 */
+	private final static GraphCache DEFAULT = new GraphCache(System.getProperty("graphCache"));
+
+	/**
+	 * 保存先のディレクトリ（nullならディスクには保存しない）
+	 */
+	private final Path dir;
+
+	/**
+	 * メモリ上のグラフ
+	 */
+	private final Map<String, SoftReference<CsrGraph>> memory = new ConcurrentHashMap<String, SoftReference<CsrGraph>>();
+
+	/**
+	 * コンストラクタ
+	 * @param dir 保存先のディレクトリ．nullならメモリ上でのみ保持する
+	 */
+	public GraphCache(String dir) {
+		this.dir = dir == null ? null : Paths.get(dir);
+	}
+
+	/**
+	 * システムプロパティで設定したキャッシュを取得する
+	 * @return キャッシュ
+	 */
+	public static GraphCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * グラフを取得する
+	 * メモリ，ディスクの順に探し，なければジェネレータにグラフのシードから導出した乱数を設定して生成する
+	 * @param generator ジェネレータ
+	 * @param graphSeed グラフのシード
+	 * @return グラフ
+	 * @throws IOException
+	 */
+	public CsrGraph load(SpatialGridGraphGenerator generator, long graphSeed) throws IOException {
+		String key = getKey(generator, graphSeed);
+
+		// メモリ上にあればそのまま使う
+		SoftReference<CsrGraph> ref = memory.get(key);
+		CsrGraph csr = ref == null ? null : ref.get();
+		if (csr != null) {
+			return csr;
+		}
+
+		// ディスクにあれば読み込む（キーが一致しなければ生成し直す）
+		Path path = dir == null ? null : dir.resolve(key + ".csr");
+		if (path != null && Files.exists(path)) {
+			csr = CsrGraphFile.read(path, key);
+		}
+
+		// なければ生成して保存
+		if (csr == null) {
+			generator.setRandom(SeedSequence.random(graphSeed, SeedSequence.GENERATOR));
+			csr = generator.generateCsr();
+			if (path != null) {
+				CsrGraphFile.write(csr, key, path);
+			}
+		}
+		memory.put(key, new SoftReference<CsrGraph>(csr));
+		return csr;
+	}
+
+	/**
+	 * グラフのキーを求める
+	 * ファイル名にも用いる
+	 * @param generator ジェネレータ
+	 * @param graphSeed グラフのシード
+	 * @return キー
+	 */
+	public static String getKey(SpatialGridGraphGenerator generator, long graphSeed) {
+		return String.format("rgg-v%d-n%d-r%s-%sx%s-%016x", GENERATOR_VERSION, generator.getNodeNum(),
+				generator.getRadius(), generator.getXRange(), generator.getYRange(), graphSeed);
+	}
+}
@@ -0,0 +1,24 @@
+import org.graphstream.graph.Node;
+
+/**
+ * グラフのエッジの変化を受け取るリスナ
+ * TimeVaryingGraphやChurnGraphがエッジを切断，接続するたびに呼び出される
+ */
+public interface GraphChangeListener {
+	/**
+	 * エッジが変化したことを通知する
+	 * 切断の場合は切断する直前に，接続の場合は接続した直後に呼び出される
+	 * @param node0 エッジの端点
+	 * @param node1 エッジの端点
+	 */
+	void edgeChanged(Node node0, Node node1);
+
+	/**
+	 * CSR形式のグラフでエッジが変化したことを通知する
+	 * TimeVaryingGraphがエッジのマスクを切り替えるたびに呼び出される
+	 * @param node0 エッジの端点のインデックス
+	 * @param node1 エッジの端点のインデックス
+	 */
+	default void edgeChanged(int node0, int node1) {
+	}
+}
@@ -0,0 +1,20 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 連結なグラフの生成（RandomGeometricGraphGenerator.generate など）のJFRイベント
+ */
+@Name("gmbc.GraphGenerate")
+@Label("Graph Generation")
+@Category({"GMBC", "Graph"})
+@Description("連結なRandom Geometric Graphが得られるまでの生成")
+public class GraphGenerateEvent extends jdk.jfr.Event {
+	@Label("Nodes")
+	int nodeNum;
+
+	@Label("Attempts")
+	@Description("生成した回数（連結でなく再生成した回数 + 1）")
+	int attempts;
+}
@@ -0,0 +1,36 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * プロトコルの1hop（Protocol.run）のJFRイベント
+ * 記録していない間は生成もcommitもしないので，常に埋め込んでおける
+ */
+@Name("gmbc.Hop")
+@Label("Hop")
+@Category({"GMBC", "Protocol"})
+@Description("Protocol.runによる1hopの実行")
+public class HopEvent extends jdk.jfr.Event {
+	/**
+	 * イベントの種類．記録していない間はインスタンスを生成しないよう，呼び出し側で isEnabled を確認する
+	 */
+	final static EventType TYPE = EventType.getEventType(HopEvent.class);
+
+	@Label("Protocol")
+	String protocol;
+
+	@Label("Hop")
+	int hop;
+
+	@Label("Frontier Size")
+	@Description("hopの開始時の送信待ちのノードの数")
+	int frontier;
+
+	@Label("Messages Sent")
+	int msgNum;
+
+	@Label("Nodes Received")
+	int receivedNum;
+}
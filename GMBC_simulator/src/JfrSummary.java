@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * JFRの記録（gmbc.jfcの設定で記録したもの）をフェーズごとに集計する
+ * フェーズはGMBCのイベントの種類（文字列のフィールドがあればその値も含む）とGCの停止で，
+ * 回数，合計時間，記録の期間に対する割合，時間の平均とパーセンタイル，数値のフィールドの合計と平均を表示する<br>
+ * hopの時間はそのhopでのMBCの生成を含む．また並列に実行した場合は，割合はスレッドの合計になる<br>
+ * 使い方: JfrSummary 記録ファイル
+ */
+public class JfrSummary {
+	/**
+	 * 1つのフェーズの集計
+	 */
+	private static class Phase {
+		/**
+		 * 時間（マイクロ秒）
+		 */
+		StreamingStats duration = new StreamingStats();
+		double totalNanos;
+		/**
+		 * 数値のフィールドごとの値と合計
+		 */
+		Map<String, StreamingStats> fields = new TreeMap<String, StreamingStats>();
+		Map<String, Double> sums = new TreeMap<String, Double>();
+	}
+
+	/**
+	 * 記録を集計して表示する
+	 * @param args 記録ファイル
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("使い方: JfrSummary 記録ファイル");
+			return;
+		}
+		Map<String, Phase> phases = new TreeMap<String, Phase>();
+		Instant first = null;
+		Instant last = null;
+
+		try (RecordingFile recording = new RecordingFile(Paths.get(args[0]))) {
+			while (recording.hasMoreEvents()) {
+				RecordedEvent event = recording.readEvent();
+				if (first == null || event.getStartTime().isBefore(first)) {
+					first = event.getStartTime();
+				}
+				if (last == null || event.getEndTime().isAfter(last)) {
+					last = event.getEndTime();
+				}
+				String name = getPhaseName(event);
+				if (name == null) {
+					continue;
+				}
+				Phase phase = phases.computeIfAbsent(name, k -> new Phase());
+				long nanos = event.getDuration().toNanos();
+				phase.duration.add(nanos / 1000.0);
+				phase.totalNanos += nanos;
+				boolean isGmbc = event.getEventType().getName().startsWith("gmbc.");
+				for (ValueDescriptor field : event.getFields()) {
+					if (!isGmbc || !isCounter(field)) {
+						continue;
+					}
+					double value = ((Number) event.getValue(field.getName())).doubleValue();
+					phase.fields.computeIfAbsent(field.getName(), k -> new StreamingStats()).add(value);
+					phase.sums.merge(field.getName(), value, Double::sum);
+				}
+			}
+		}
+		if (first == null) {
+			System.out.println("イベントがない");
+			return;
+		}
+
+		double span = Math.max(Duration.between(first, last).toNanos(), 1);
+		System.out.printf("recording: %.1f s%n", span / 1e9);
+		System.out.printf("%-32s %10s %12s %7s %10s %10s %10s  %s%n",
+				"phase", "count", "total[ms]", "share", "mean[us]", "p50[us]", "p99[us]", "fields (sum / mean)");
+		for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+			Phase phase = entry.getValue();
+			List<String> fields = new ArrayList<String>();
+			for (Map.Entry<String, StreamingStats> field : phase.fields.entrySet()) {
+				fields.add(String.format("%s=%.0f/%.2f", field.getKey(), phase.sums.get(field.getKey()),
+						field.getValue().getMean()));
+			}
+			System.out.printf("%-32s %10d %12.1f %6.1f%% %10.1f %10.1f %10.1f  %s%n",
+					entry.getKey(), phase.duration.getCount(), phase.totalNanos / 1e6,
+					100.0 * phase.totalNanos / span, phase.duration.getMean(),
+					phase.duration.getQuantile(0.5), phase.duration.getQuantile(0.99), String.join(" ", fields));
+		}
+	}
+
+	/**
+	 * イベントのフェーズ名を求める
+	 * GMBCのイベントは種類と文字列のフィールドの値，GCの停止は"GC"とし，それ以外は集計しない
+	 * @param event イベント
+	 * @return フェーズ名（集計しなければnull）
+	 */
+	private static String getPhaseName(RecordedEvent event) {
+		String type = event.getEventType().getName();
+		if (type.equals("jdk.GarbageCollection")) {
+			return "GC";
+		}
+		if (!type.startsWith("gmbc.")) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder(type.substring("gmbc.".length()));
+		for (ValueDescriptor field : event.getFields()) {
+			if (field.getTypeName().equals("java.lang.String")) {
+				sb.append(' ').append(event.getString(field.getName()));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 集計する数値のフィールドか（イベントの共通のフィールドは除く）
+	 * @param field フィールド
+	 * @return 集計するならtrue
+	 */
+	private static boolean isCounter(ValueDescriptor field) {
+		String type = field.getTypeName();
+		if (!type.equals("int") && !type.equals("long")) {
+			return false;
+		}
+		String name = field.getName();
+		return !name.equals("startTime") && !name.equals("duration");
+	}
+}
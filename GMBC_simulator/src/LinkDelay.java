@@ -0,0 +1,109 @@
+import java.util.Random;
+
+/**
+ * リンクの遅延の分布（EventDrivenSimulationで利用）
+ * メッセージを送信するたびに，そのエッジでの遅延を引く<br>
+ * 時間の単位は任意だが，同期実行の1hopを1とすると比較しやすい
+ */
+public interface LinkDelay {
+	/**
+	 * 遅延を引く
+	 * @param edge 送信するエッジ（CSRのエッジID）
+	 * @param rnd 乱数生成器
+	 * @return 遅延（0以上）
+	 */
+	double sample(int edge, Random rnd);
+
+	/**
+	 * 全てのリンクで一定の遅延
+	 * 1.0なら，到達率とメッセージ数は同期実行と同じ分布になる
+	 * @param delay 遅延
+	 * @return 遅延の分布
+	 */
+	static LinkDelay constant(double delay) {
+		return (edge, rnd) -> delay;
+	}
+
+	/**
+	 * 一様分布の遅延
+	 * @param min 最小値
+	 * @param max 最大値
+	 * @return 遅延の分布
+	 */
+	static LinkDelay uniform(double min, double max) {
+		return (edge, rnd) -> min + (max - min) * rnd.nextDouble();
+	}
+
+	/**
+	 * 指数分布の遅延
+	 * @param mean 平均
+	 * @return 遅延の分布
+	 */
+	static LinkDelay exponential(double mean) {
+		return (edge, rnd) -> -mean * Math.log(1.0 - rnd.nextDouble());
+	}
+
+	/**
+	 * エッジの長さに比例する遅延
+	 * 長さが半径のエッジで base の遅延になる（無線の伝搬や再送の多さを長さで近似する）
+	 * @param csr 対象となるグラフ
+	 * @param radius 接続の半径
+	 * @param base 長さが半径のエッジでの遅延の分布
+	 * @return 遅延の分布
+	 */
+	static LinkDelay distance(CsrGraph csr, float radius, LinkDelay base) {
+		float[] scale = new float[csr.getEdgeCount()];
+		for (int e = 0; e < scale.length; e++) {
+			int v0 = csr.getEdgeNode0(e);
+			int v1 = csr.getEdgeNode1(e);
+			float dx = csr.getX(v0) - csr.getX(v1);
+			float dy = csr.getY(v0) - csr.getY(v1);
+			scale[e] = (float) Math.sqrt(dx * dx + dy * dy) / radius;
+		}
+		return (edge, rnd) -> scale[edge] * base.sample(edge, rnd);
+	}
+
+	/**
+	 * 文字列から遅延の分布を生成する
+	 * 形式: const:遅延, uniform:最小値:最大値, exp:平均
+	 * （エッジの長さに比例する dist:分布 は，グラフを指定する parse(String, CsrGraph, float) で生成する）
+	 * @param spec 遅延の分布を表す文字列
+	 * @return 遅延の分布
+	 */
+	static LinkDelay parse(String spec) {
+		return parse(spec, null, 0);
+	}
+
+	/**
+	 * 文字列から遅延の分布を生成する
+	 * 形式: const:遅延, uniform:最小値:最大値, exp:平均, dist:分布（例: dist:exp:1.0）<br>
+	 * dist:分布 は，長さが半径のエッジで分布に従う遅延を，エッジの長さに比例させる（distance）
+	 * @param spec 遅延の分布を表す文字列
+	 * @param csr 対象となるグラフ（distを使わなければnullでよい）
+	 * @param radius 接続の半径
+	 * @return 遅延の分布
+	 */
+	static LinkDelay parse(String spec, CsrGraph csr, float radius) {
+		String[] token = spec.split(":");
+		try {
+			switch (token[0]) {
+			case "const":
+				return constant(Double.parseDouble(token[1]));
+			case "uniform":
+				return uniform(Double.parseDouble(token[1]), Double.parseDouble(token[2]));
+			case "exp":
+				return exponential(Double.parseDouble(token[1]));
+			case "dist":
+				if (csr == null) {
+					throw new IllegalArgumentException("エッジの長さに比例する遅延にはグラフが必要: " + spec);
+				}
+				return distance(csr, radius, parse(spec.substring("dist:".length()), null, 0));
+			default:
+				break;
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException | StringIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("遅延の分布の形式が正しくない: " + spec, e);
+		}
+		throw new IllegalArgumentException("遅延の分布の形式が正しくない: " + spec);
+	}
+}
@@ -1,38 +1,171 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import org.graphstream.graph.Node;
 
 /**
  * 各ノードが持つ二重連結成分分解を表す行列
  * 隣接(1hop以内)する2ノード間の距離を表す
- * ノードのID
+ * 隣接ノードにスロット番号(0からd-1)を振り，d×dのint配列で距離を保持する<br>
+ * 隣接ノード（IDまたはインデックス）からスロットへは，オープンアドレス法のハッシュ表で引く
  */
 public class MBC {
 	/**
-	 * MBCを表すHashMap
-	 * keyをノードAのID+ノードBのIDとし，Valueをそのノード間の距離とする
-	 * Mapにないデータは接続していないと判断し，極大値(INF)とする
+	 * 極大値
 	 */
-	private Map<String, Integer> mbc = new HashMap<String, Integer>();
+	private final int INF = 1<<29;
 
 	/**
-	 * 極大値
+	 * 隣接ノードの数（行列の1辺）
 	 */
-	private final int INF = 1<<29;
+	private int size;
+
+	/**
+	 * ノード間の距離
+	 * スロットaとスロットbの距離を dist[a * size + b] に格納する
+	 * 登録されていない組は接続していないと判断し，極大値(INF)とする
+	 */
+	private int[] dist;
+
+	/**
+	 * 各スロットのノードのID（GraphStreamのグラフから生成した場合）
+	 */
+	private String[] ids;
+
+	/**
+	 * 各スロットのノードのインデックス（CSR形式のグラフから生成した場合）
+	 */
+	private int[] nodes;
+
+	/**
+	 * 隣接ノードからスロットへのハッシュ表（オープンアドレス法，線形探査）
+	 * 値は スロット + 1 で，0は空きを表す．長さは隣接ノードの数の2倍以上の2の冪
+	 */
+	private int[] table;
+
+	/**
+	 * ハッシュ表の添字のマスク（長さ - 1）と，ハッシュ値から添字を取り出すシフト量
+	 */
+	private int mask;
+	private int shift;
+
+	/**
+	 * GraphStreamのノードのIDからMBCを生成する
+	 * @param ids 各スロットのノードのID
+	 */
+	public MBC(String[] ids) {
+		this(ids.length);
+		this.ids = ids;
+		for (int slot = 0; slot < size; slot++) {
+			put(ids[slot].hashCode(), slot);
+		}
+	}
+
+	/**
+	 * CSR形式のノードのインデックスからMBCを生成する
+	 * @param nodes 各スロットのノードのインデックス
+	 */
+	public MBC(int[] nodes) {
+		this(nodes.length);
+		this.nodes = nodes;
+		for (int slot = 0; slot < size; slot++) {
+			put(nodes[slot], slot);
+		}
+	}
+
+	/**
+	 * 全ての距離を極大値で初期化する
+	 * @param size 隣接ノードの数
+	 */
+	private MBC(int size) {
+		this.size = size;
+		this.dist = new int[size * size];
+		Arrays.fill(dist, INF);
+		this.table = new int[Integer.highestOneBit(Math.max(size, 1)) * 4];
+		this.mask = table.length - 1;
+		this.shift = Integer.numberOfLeadingZeros(mask);
+	}
+
+	/**
+	 * ハッシュ値を表の添字へ散らす
+	 * @param hash ハッシュ値（ノードのインデックスまたはIDのハッシュ値）
+	 * @return 探査を始める添字
+	 */
+	private int index(int hash) {
+		return (hash * 0x9E3779B9) >>> shift;
+	}
+
+	/**
+	 * ハッシュ表にスロットを登録する
+	 * @param hash 隣接ノードのハッシュ値
+	 * @param slot スロット
+	 */
+	private void put(int hash, int slot) {
+		int i = index(hash);
+		while (table[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		table[i] = slot + 1;
+	}
+
+	/**
+	 * 隣接ノードの数を取得する
+	 * @return 隣接ノードの数
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * ノードのIDからスロットを取得する
+	 * MBCを生成した時と隣接ノードの順序が変わっていなければ，hintの位置で見つかる．なければハッシュ表で引く
+	 * @param id ノードのID
+	 * @param hint スロットの候補（不明なら-1）
+	 * @return スロット．MBCに含まれなければ-1
+	 */
+	public int getSlot(String id, int hint) {
+		if (hint >= 0 && hint < size && ids[hint].equals(id)) {
+			return hint;
+		}
+		for (int i = index(id.hashCode()); table[i] != 0; i = (i + 1) & mask) {
+			int slot = table[i] - 1;
+			if (ids[slot].equals(id)) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * ノードのインデックスからスロットを取得する
+	 * hintの位置になければハッシュ表で引く
+	 * @param node ノードのインデックス
+	 * @param hint スロットの候補（不明なら-1）
+	 * @return スロット．MBCに含まれなければ-1
+	 */
+	public int getSlot(int node, int hint) {
+		if (hint >= 0 && hint < size && nodes[hint] == node) {
+			return hint;
+		}
+		for (int i = index(node); table[i] != 0; i = (i + 1) & mask) {
+			int slot = table[i] - 1;
+			if (nodes[slot] == node) {
+				return slot;
+			}
+		}
+		return -1;
+	}
 
 	/**
 	 * MBCの値(ノード間の距離)を取得する
-	 * @param key ノード間のキー(ノードAのID+ノードBのID)
-	 * @return ノード間の距離
+	 * @param slotA ノードAのスロット
+	 * @param slotB ノードBのスロット
+	 * @return ノード間の距離．どちらかがMBCに含まれなければ極大値
 	 */
-	public int getDist(String key) {
-		// キーが登録されていればその値を，されていなければ極大値を返す
-		if (mbc.containsKey(key)) {
-			return mbc.get(key);
-		} else {
+	public int getDist(int slotA, int slotB) {
+		if (slotA < 0 || slotB < 0) {
 			return INF;
 		}
+		return dist[slotA * size + slotB];
 	}
 
 	/**
@@ -42,20 +175,38 @@ public class MBC {
 	 * @return ノード間の距離
 	 */
 	public int getDist(Node nodeA, Node nodeB) {
-		String key = nodeA.getId() + nodeB.getId();
-		return getDist(key);
+		return getDist(getSlot(nodeA.getId(), -1), getSlot(nodeB.getId(), -1));
 	}
 
 	/**
 	 * MBCの値(ノード間の距離)を追加する
 	 * すでに登録されている場合は，小さい方を優先する
-	 * @param nodeA ノードA
-	 * @param nodeB ノードB
+	 * @param slotA ノードAのスロット
+	 * @param slotB ノードBのスロット
 	 * @param dist ノード間の距離
 	 */
-	public void setDist(Node nodeA, Node nodeB, int dist) {
-		String key = nodeA.getId() + nodeB.getId();
-		mbc.put(key, Math.min(getDist(nodeA, nodeB), dist));
+	public void setDist(int slotA, int slotB, int dist) {
+		int i = slotA * size + slotB;
+		if (dist < this.dist[i]) {
+			this.dist[i] = dist;
+		}
+	}
+
+	/**
+	 * 3重ループで全てのスロット間の最短距離を計算する
+	 */
+	public void shortestPath() {
+		// 途中で経由するノードのループ
+		for (int mid = 0; mid < size; mid++) {
+			// スタート地点のノードのループ
+			for (int start = 0; start < size; start++) {
+				int startMid = dist[start * size + mid];
+				// ゴール地点のノードのループ
+				for (int goal = 0; goal < size; goal++) {
+					setDist(start, goal, startMid + dist[mid * size + goal]);
+				}
+			}
+		}
 	}
 
 	/**
@@ -1,74 +1,225 @@
-import java.util.ArrayDeque;
-import java.util.Iterator;
-import java.util.Queue;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.Arrays;
+import java.util.BitSet;
 
+import org.graphstream.graph.Edge;
 import org.graphstream.graph.Node;
 
 public class MBCGenerator {
 
 	private int TTL = 1;
 
+	/**
+	 * GraphStreamのグラフからMBCを生成する
+	 * CSR形式での生成と同じく，確認済みの印とキューは配列を使い回す（ノードはグラフでのインデックスで扱う）
+	 * @param root MBCを生成するノード
+	 * @return 生成したMBC
+	 */
 	public MBC generate(Node root) {
-		MBC mbc = new MBC();
+		MbcEvent event = MbcEvent.TYPE.isEnabled() ? new MbcEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		int nodeCount = root.getGraph().getNodeCount();
+		if (checked.length < nodeCount) {
+			checked = new int[nodeCount];
+			slotOf = new int[nodeCount];
+			stamp = 0;
+		}
+
+		// 隣接ノードにスロットを振る（エッジの順序）
+		String[] ids = new String[root.getDegree()];
+		int slot = 0;
+		for (Edge edge : root.getEachEdge()) {
+			Node neighbor = edge.getOpposite(root);
+			ids[slot] = neighbor.getId();
+			slotOf[neighbor.getIndex()] = slot;
+			slot++;
+		}
+		MBC mbc = new MBC(ids);
 
 		// 転送するノードを選択する
-		Iterator<? extends Node> rootNeighbor = root.getNeighborNodeIterator();
-		while(rootNeighbor.hasNext()) {
-			Node from = rootNeighbor.next();
-			// 待機ノードとメッセージ(TTL)のQueue
+		for (Edge rootEdge : root.getEachEdge()) {
+			Node from = rootEdge.getOpposite(root);
+			int fromSlot = slotOf[from.getIndex()];
+			// 確認済みのノードを初期化
+			stamp++;
+			// 待機ノードとメッセージ(TTL)のキュー
 			// 2つが対応するように追加する
-			Queue<Node> nodeQueue = new ArrayDeque<Node>();
-			Queue<Integer> msgQueue = new ArrayDeque<Integer>();
-			// 確認済みのノード
-			Set<String> checked = new TreeSet<String>();
-			// fromをQueueに追加
-			nodeQueue.add(from);
-			msgQueue.add(TTL);
-			checked.add(from.getId());
+			int head = 0;
+			int tail = 0;
+			graphQueue[tail] = from;
+			msgQueue[tail] = TTL;
+			tail++;
+			checked[from.getIndex()] = stamp;
 			// queueが空になるまでループ
-			while(!nodeQueue.isEmpty()) {
+			while (head < tail) {
 				// 一つ取り出して，隣接ノードによって処理を行う
-				Node to = nodeQueue.poll();
-				int currentTtl = msgQueue.poll();
-				Iterator<? extends Node> fromNeighbor = to.getNeighborNodeIterator();
+				Node to = graphQueue[head];
+				int currentTtl = msgQueue[head];
+				head++;
 				// 　各隣接ノードから処理を行う
-				while(fromNeighbor.hasNext()) {
-					Node node = fromNeighbor.next();
+				for (Edge edge : to.getEachEdge()) {
+					Node node = edge.getOpposite(to);
 					// rootと隣接しているなら，距離を追加
 					if(node == root) {
-						mbc.setDist(from, to, (TTL - currentTtl) + 1);
+						mbc.setDist(fromSlot, slotOf[to.getIndex()], (TTL - currentTtl) + 1);
 					}
 					// それ以外で，まだチェックしていない
 					// かつ，TTLが0出ないならqueueに追加
-					else if (!checked.contains(node.getId()) && currentTtl > 0) {
-						nodeQueue.add(node);
-						msgQueue.add(currentTtl - 1);
-						checked.add(node.getId());
+					else if (checked[node.getIndex()] != stamp && currentTtl > 0) {
+						if (tail == msgQueue.length) {
+							growQueue();
+						}
+						graphQueue[tail] = node;
+						msgQueue[tail] = currentTtl - 1;
+						tail++;
+						checked[node.getIndex()] = stamp;
 					}
 				}
 			}
 		}
 
 		// 3重ループで最短距離の計算
-		// 途中で経由するノードのループ
-		Iterator<? extends Node> i = root.getNeighborNodeIterator();
-		while(i.hasNext()) {
-			Node mid = i.next();
-			// スタート地点のノードのループ
-			Iterator<? extends Node> j = root.getNeighborNodeIterator();
-			while(j.hasNext()) {
-				Node start = j.next();
-				// ゴール地点のノードのループ
-				Iterator<? extends Node> k = root.getNeighborNodeIterator();
-				while(k.hasNext()) {
-					Node goal = k.next();
-					mbc.setDist(start, goal, mbc.getDist(start, mid) + mbc.getDist(mid, goal));
+		mbc.shortestPath();
+		if (event != null && event.shouldCommit()) {
+			event.degree = ids.length;
+			event.commit();
+		}
+		return mbc;
+	}
+
+	/**
+	 * 確認済みのノードの印
+	 * 値がstampと等しければ確認済みとする
+	 */
+	private int[] checked = new int[0];
+	private int stamp = 0;
+
+	/**
+	 * rootの隣接ノードのスロット
+	 * rootの隣接ノードについてのみ，生成中のMBCでのスロットを表す
+	 */
+	private int[] slotOf = new int[0];
+
+	/**
+	 * 幅優先探索の待機ノードとメッセージ(TTL)のキュー
+	 * 待機ノードはCSR形式ではインデックス，GraphStreamのグラフではノードで持つ
+	 */
+	private int[] nodeQueue = new int[16];
+	private Node[] graphQueue = new Node[16];
+	private int[] msgQueue = new int[16];
+
+	/**
+	 * キューを2倍に伸ばす（3つのキューは常に同じ長さにする）
+	 */
+	private void growQueue() {
+		int length = msgQueue.length * 2;
+		nodeQueue = Arrays.copyOf(nodeQueue, length);
+		graphQueue = Arrays.copyOf(graphQueue, length);
+		msgQueue = Arrays.copyOf(msgQueue, length);
+	}
+
+	/**
+	 * CSR形式のグラフからMBCを生成する
+	 * generate(Node)と同じ手順で，同じ内容のMBCを生成する
+	 * @param graph 対象となるグラフ
+	 * @param root MBCを生成するノードのインデックス
+	 * @return 生成したMBC
+	 */
+	public MBC generate(CsrGraph graph, int root) {
+		return generate(graph, null, root);
+	}
+
+	/**
+	 * 切断中のエッジを除いたCSR形式のグラフからMBCを生成する
+	 * スロットは接続している隣接ノードにだけ，隣接リストの順序で振る
+	 * JFRで記録している場合は，生成ごとにMbcEventを記録する
+	 * @param graph 対象となるグラフ
+	 * @param deadEdges 切断中のエッジ（nullなら全て接続）
+	 * @param root MBCを生成するノードのインデックス
+	 * @return 生成したMBC
+	 */
+	public MBC generate(CsrGraph graph, BitSet deadEdges, int root) {
+		MbcEvent event = MbcEvent.TYPE.isEnabled() ? new MbcEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		if (checked.length < graph.getNodeCount()) {
+			checked = new int[graph.getNodeCount()];
+			slotOf = new int[graph.getNodeCount()];
+			stamp = 0;
+		}
+
+		int rootStart = graph.getOffset(root);
+		int rootEnd = rootStart + graph.getDegree(root);
+
+		// 接続している隣接ノードにスロットを振る（隣接リストの順序）
+		int degree = 0;
+		for (int k = rootStart; k < rootEnd; k++) {
+			if (deadEdges == null || !deadEdges.get(graph.getEdgeId(k))) {
+				degree++;
+			}
+		}
+		int[] nodes = new int[degree];
+		int slot = 0;
+		for (int k = rootStart; k < rootEnd; k++) {
+			if (deadEdges == null || !deadEdges.get(graph.getEdgeId(k))) {
+				nodes[slot] = graph.getNeighbor(k);
+				slotOf[nodes[slot]] = slot;
+				slot++;
+			}
+		}
+		MBC mbc = new MBC(nodes);
+
+		for (int fromSlot = 0; fromSlot < degree; fromSlot++) {
+			int from = nodes[fromSlot];
+			// 確認済みのノードを初期化
+			stamp++;
+			// fromをQueueに追加
+			int head = 0;
+			int tail = 0;
+			nodeQueue[tail] = from;
+			msgQueue[tail] = TTL;
+			tail++;
+			checked[from] = stamp;
+			// queueが空になるまでループ
+			while (head < tail) {
+				int to = nodeQueue[head];
+				int currentTtl = msgQueue[head];
+				head++;
+				int start = graph.getOffset(to);
+				int end = start + graph.getDegree(to);
+				for (int k = start; k < end; k++) {
+					// 切断中のエッジは使わない
+					if (deadEdges != null && deadEdges.get(graph.getEdgeId(k))) {
+						continue;
+					}
+					int node = graph.getNeighbor(k);
+					// rootと隣接しているなら，距離を追加
+					if (node == root) {
+						mbc.setDist(fromSlot, slotOf[to], (TTL - currentTtl) + 1);
+					}
+					// それ以外で，まだチェックしていない
+					// かつ，TTLが0出ないならqueueに追加
+					else if (checked[node] != stamp && currentTtl > 0) {
+						if (tail == msgQueue.length) {
+							growQueue();
+						}
+						nodeQueue[tail] = node;
+						msgQueue[tail] = currentTtl - 1;
+						tail++;
+						checked[node] = stamp;
+					}
 				}
 			}
 		}
+
+		// 3重ループで最短距離の計算
+		mbc.shortestPath();
+		if (event != null && event.shouldCommit()) {
+			event.degree = degree;
+			event.commit();
+		}
 		return mbc;
 	}
-
 }
@@ -0,0 +1,24 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * MBCの生成（MBCGenerator.generate）のJFRイベント
+ * 生成にかかった時間はイベントの期間になる
+ */
+@Name("gmbc.MbcGenerate")
+@Label("MBC Generation")
+@Category({"GMBC", "Protocol"})
+@Description("MBCGenerator.generateによる1ノードのMBCの生成")
+public class MbcEvent extends jdk.jfr.Event {
+	/**
+	 * イベントの種類．記録していない間はインスタンスを生成しないよう，呼び出し側で isEnabled を確認する
+	 */
+	final static EventType TYPE = EventType.getEventType(MbcEvent.class);
+
+	@Label("Degree")
+	@Description("MBCを生成したノードの（接続している）次数")
+	int degree;
+}
@@ -1,7 +1,11 @@
 import java.util.ArrayDeque;
-import java.util.Iterator;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Queue;
+import java.util.Random;
 
+import org.graphstream.graph.Edge;
 import org.graphstream.graph.Graph;
 import org.graphstream.graph.Node;;
 
@@ -14,17 +18,68 @@ public abstract class Protocol {
 	 */
 	protected Graph graph;
 
+	/**
+	 * 対象となるグラフのCSR形式のスナップショット
+	 * 設定されている場合はGraphStreamを使わず配列上でプロトコルを実行する
+	 */
+	protected CsrGraph csr;
+
+	/**
+	 * 乱数生成器
+	 */
+	protected Random rnd = new Random();
+
+	/**
+	 * ビュアーで表示するか
+	 * falseの場合はノードにui.styleを設定しない
+	 */
+	private boolean isView = false;
+
 	/**
 	 * メッセージ送信待ちのノード
 	 */
 	private Queue<Message> waitNodes = new ArrayDeque<Message>();
 
+	// CSR形式での実行に利用する変数
+	/**
+	 * 受信済みのノード
+	 */
+	private BitSet infection = new BitSet();
+
+	/**
+	 * 切断中のエッジ（CSRのエッジIDで管理）
+	 * TimeVaryingGraphのマスクを共有し，ビットが立っているエッジは隣接ノードの走査で無視する
+	 * nullなら全てのエッジが接続している
+	 */
+	protected BitSet deadEdges;
+
+	/**
+	 * メッセージ送信待ちのノード（送信者と受信者の組）
+	 */
+	private int[] waitFrom = new int[0];
+	private int[] waitTo = new int[0];
+	private int waitNum;
+
+	/**
+	 * 次のstepでの送信待ちのノード
+	 * waitFrom, waitToと交互に利用する
+	 */
+	private int[] nextFrom = new int[0];
+	private int[] nextTo = new int[0];
+	private int nextNum;
+
+	/**
+	 * choiceNodeが選択したノードを書き込むバッファ
+	 * 次数の最大値の長さで確保し，全ての転送で使い回す
+	 */
+	private int[] sendBuffer = new int[0];
+
 	// 取得するデータ
 	/**
 	 * 到達率（全ノードのうち，どれだけのノードがメッセージを受け取ったか）を計測するためのカウンタ
 	 * メッセージを受信したノードの数をカウント
 	 */
-	private int receivedNodeNum;
+	protected int receivedNodeNum;
 
 	/**
 	 * ノード数
@@ -32,6 +87,12 @@ public abstract class Protocol {
 	 */
 	private int nodeNum;
 
+	/**
+	 * 担当するノードの数（ShardWorkerでの実行に利用）
+	 * CSR形式のグラフの先頭からこの数のノードだけを，ターンの開始時の処理の対象とする
+	 */
+	protected int localNodeNum;
+
 	/**
 	 * メッセージ数のカウント
 	 */
@@ -40,7 +101,7 @@ public abstract class Protocol {
 	/**
 	 * ホップ数のカウント
 	 */
-	private int hopNum;
+	protected int hopNum;
 
 	/**
 	 * グラフを設定する
@@ -48,19 +109,85 @@ public abstract class Protocol {
 	 */
 	public void setGraph(Graph graph) {
 		this.graph = graph;
+		this.csr = null;
 		nodeNum = graph.getNodeCount();
 	}
 
+	/**
+	 * CSR形式のグラフを設定する
+	 * 以降のinit, runは配列上で実行され，GraphStreamのグラフには触れない
+	 * @param csr 対象となるグラフ
+	 */
+	public void setGraph(CsrGraph csr) {
+		this.graph = null;
+		this.csr = csr;
+		this.deadEdges = null;
+		nodeNum = csr.getNodeCount();
+		localNodeNum = nodeNum;
+		// 各ノードは高々1度しか送信待ちにならない
+		waitFrom = new int[nodeNum];
+		waitTo = new int[nodeNum];
+		nextFrom = new int[nodeNum];
+		nextTo = new int[nodeNum];
+		int maxDegree = 0;
+		for (int v = 0; v < nodeNum; v++) {
+			maxDegree = Math.max(maxDegree, csr.getDegree(v));
+		}
+		sendBuffer = new int[maxDegree];
+	}
+
+	/**
+	 * 切断中のエッジのマスクを設定する（CSR形式での実行に利用）
+	 * setGraph(CsrGraph)の後に設定する
+	 * @param deadEdges 切断中のエッジ．TimeVaryingGraph.getEdgeMask()を渡す
+	 */
+	public void setEdgeMask(BitSet deadEdges) {
+		this.deadEdges = deadEdges;
+	}
+
+	/**
+	 * 担当するノードの数を設定する（CSR形式での実行に利用）
+	 * シャードのグラフでは，先頭の担当するノードの後に隣接する他のシャードのノードを並べる
+	 * setGraph(CsrGraph)の後に設定する
+	 * @param localNodeNum 担当するノードの数
+	 */
+	public void setLocalNodeNum(int localNodeNum) {
+		this.localNodeNum = localNodeNum;
+	}
+
+	/**
+	 * 乱数生成器を設定する
+	 * 同じシードの乱数生成器を与えれば，GraphStreamとCSRのどちらで実行しても同じ結果になる
+	 * @param rnd 乱数生成器
+	 */
+	public void setRandom(Random rnd) {
+		this.rnd = rnd;
+	}
+
+	/**
+	 * ビュアーで表示するかを設定する
+	 * 表示する場合は，受信済みのノードが分かるようにui.styleで色を付ける
+	 * @param isView 表示するならtrue
+	 */
+	public void setView(boolean isView) {
+		this.isView = isView;
+	}
+
 	/**
 	 * 初期化．
 	 * 全てのノードの受診済みのマーキングを初期化し，一つ目のノード(source)を追加
 	 */
 	public void init() {
+		if (csr != null) {
+			initInCsr();
+			return;
+		}
+
 		// 全てのノードを未受診に
 		// clearAttributeで行けるかも
 		for(Node node : graph.getEachNode()) {
 			node.addAttribute("Infection", false);
-			node.addAttribute("ui.style", "fill-color: rgb(0,0,0);");
+			if (isView) node.addAttribute("ui.style", "fill-color: rgb(0,0,0);");
 		}
 
 		// データ型変数の初期化
@@ -74,12 +201,81 @@ public abstract class Protocol {
 		waitNodes.add(new Message(null, source));
 	}
 
+	/**
+	 * CSR形式での初期化
+	 */
+	private void initInCsr() {
+		// 全てのノードを未受信に
+		infection.clear();
+
+		// データ型変数の初期化
+		receivedNodeNum = 0;
+		msgNum = 0;
+		hopNum = 0;
+		waitNum = 0;
+
+		// 一つ目のノード(source)を追加（ソースノードを含まないシャードのグラフでは何もしない）
+		int source = csr.getIndex("n1");
+		if (source < 0) {
+			return;
+		}
+		sendMsg(source);
+		waitFrom[0] = -1;
+		waitTo[0] = source;
+		waitNum = 1;
+	}
+
 	/**
 	 * プロトコルの実行．
+	 * 1hopだけ進める（進め方はstepで決める）<br>
+	 * JFRで記録している場合は，hopごとにHopEventを記録する
+	 * @return プロトコルが終了するか
+	 */
+	public final boolean run() {
+		HopEvent event = HopEvent.TYPE.isEnabled() ? new HopEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		int frontier = getFrontierNum();
+		int msgBefore = msgNum;
+		int receivedBefore = receivedNodeNum;
+
+		boolean isFinished = step();
+
+		if (event != null && event.shouldCommit()) {
+			event.protocol = toString();
+			event.hop = hopNum;
+			event.frontier = frontier;
+			event.msgNum = msgNum - msgBefore;
+			event.receivedNum = receivedNodeNum - receivedBefore;
+			event.commit();
+		}
+		return isFinished;
+	}
+
+	/**
+	 * 1hopだけ進める
+	 * 独自の進め方をするプロトコルはこれをオーバーライドする（HopEventの記録はrunで行う）
+	 * @return プロトコルが終了するか
+	 */
+	protected boolean step() {
+		return csr != null ? runInCsr() : runInGraph();
+	}
+
+	/**
+	 * 送信待ちの数を取得する（HopEventの記録に利用）
+	 * @return 送信待ちの数
+	 */
+	protected int getFrontierNum() {
+		return csr != null ? waitNum : waitNodes.size();
+	}
+
+	/**
+	 * GraphStreamのグラフでのプロトコルの実行
 	 * 1hopだけ進める
 	 * @return プロトコルが終了するか
 	 */
-	public boolean run() {
+	private boolean runInGraph() {
 		// ホップ数をカウント
 		hopNum++;
 
@@ -123,6 +319,59 @@ public abstract class Protocol {
 		}
 	}
 
+	/**
+	 * CSR形式でのプロトコルの実行
+	 * 1hopだけ進める
+	 * @return プロトコルが終了するか
+	 */
+	private boolean runInCsr() {
+		// ホップ数をカウント
+		hopNum++;
+
+		// 次のstepでの送信待ち
+		nextNum = 0;
+
+		// ターンの開始時の処理
+		updateInTern();
+
+		// 送信待ちのノードからメッセージを送信
+		for (int i = 0; i < waitNum; i++) {
+			int from = waitFrom[i];
+			int receive = waitTo[i];
+
+			// 転送先を選択する
+			int sendNum;
+			if (from < 0) {
+				// ソースノードの場合
+				sendNum = firstChoiceNode(receive, sendBuffer);
+			} else {
+				// それ以外のノードの場合
+				sendNum = choiceNode(from, receive, sendBuffer);
+			}
+			// 決定した転送先へ転送
+			for (int s = 0; s < sendNum; s++) {
+				int to = sendBuffer[s];
+				if (sendMsg(to)) {
+					nextFrom[nextNum] = receive;
+					nextTo[nextNum] = to;
+					nextNum++;
+				}
+			}
+		}
+
+		// 送信待ちを入れ替え
+		int[] tmp = waitFrom;
+		waitFrom = nextFrom;
+		nextFrom = tmp;
+		tmp = waitTo;
+		waitTo = nextTo;
+		nextTo = tmp;
+		waitNum = nextNum;
+
+		// 待機中のノードがなければプロトコル終了
+		return waitNum == 0;
+	}
+
 	/**
 	 * メッセージを送信
 	 * @param to 送信先
@@ -138,7 +387,28 @@ public abstract class Protocol {
 
 		// 受信済みのマーキング
 		to.addAttribute("Infection", true);
-		to.addAttribute("ui.style", "fill-color: rgb(255,0,0);");
+		if (isView) to.addAttribute("ui.style", "fill-color: rgb(255,0,0);");
+
+		// 受信済みノードのカウント
+		receivedNodeNum++;
+		return true;
+	}
+
+	/**
+	 * CSR形式でメッセージを送信
+	 * @param to 送信先のインデックス
+	 */
+	private boolean sendMsg(int to) {
+		// メッセージ送信のカウント
+		msgNum++;
+
+		// 受信済みであれば処理しない
+		if (infection.get(to)) {
+			return false;
+		}
+
+		// 受信済みのマーキング
+		infection.set(to);
 
 		// 受信済みノードのカウント
 		receivedNodeNum++;
@@ -153,6 +423,17 @@ public abstract class Protocol {
 	 */
 	abstract protected Queue<Node> choiceNode(Message msg);
 
+	/**
+	 * CSR形式で転送するノードを選択する．
+	 * choiceNode(Message)と同じ規則で，隣接ノードもGraphStreamと同じ順序で扱うこと<br>
+	 * 選択したノードは呼び出し側のバッファの先頭から書き込み，転送ごとに配列を生成しないこと
+	 * @param from 送信元のインデックス
+	 * @param receive 受信者（転送元）のインデックス
+	 * @param sendNodes 選択したノードを書き込むバッファ（長さは次数の最大値以上）
+	 * @return 選択したノードの数
+	 */
+	abstract protected int choiceNode(int from, int receive, int[] sendNodes);
+
 	/**
 	 * ソースノードによる転送を行うノードを選択する
 	 * 全ての隣接ノードに対しメッセージを転送する
@@ -164,15 +445,118 @@ public abstract class Protocol {
 		Queue<Node> sendNodes = new ArrayDeque<Node>();
 
 		// 転送するノードを選択する
-		Iterator<? extends Node> neighbor = msg.getTo().getNeighborNodeIterator();
-		while(neighbor.hasNext()) {
-			Node to = neighbor.next();
-			sendNodes.add(to);
+		Node receive = msg.getTo();
+		for (Edge edge : receive.getEachEdge()) {
+			sendNodes.add(edge.getOpposite(receive));
 		}
 
 		return sendNodes;
 	}
 
+	/**
+	 * CSR形式でソースノードによる転送を行うノードを選択する
+	 * 全ての隣接ノードに対しメッセージを転送する
+	 * @param receive ソースノードのインデックス
+	 * @param sendNodes 選択したノードを書き込むバッファ
+	 * @return 選択したノードの数
+	 */
+	protected int firstChoiceNode(int receive, int[] sendNodes) {
+		int start = csr.getOffset(receive);
+		int degree = csr.getDegree(receive);
+		int sendNum = 0;
+		for (int k = start; k < start + degree; k++) {
+			if (isAlive(k)) {
+				sendNodes[sendNum++] = csr.getNeighbor(k);
+			}
+		}
+		return sendNum;
+	}
+
+	/**
+	 * CSR形式の隣接リストのスロットのエッジが接続しているか
+	 * @param slot 隣接リストのスロット
+	 * @return 接続していればtrue
+	 */
+	protected boolean isAlive(int slot) {
+		return deadEdges == null || !deadEdges.get(csr.getEdgeId(slot));
+	}
+
+	/**
+	 * CSR形式で，接続しているエッジの数（現在の次数）を取得する
+	 * @param v ノードのインデックス
+	 * @return 次数
+	 */
+	protected int getAliveDegree(int v) {
+		int start = csr.getOffset(v);
+		int degree = csr.getDegree(v);
+		if (deadEdges == null) {
+			return degree;
+		}
+		int alive = 0;
+		for (int k = start; k < start + degree; k++) {
+			if (isAlive(k)) {
+				alive++;
+			}
+		}
+		return alive;
+	}
+
+	/**
+	 * 配列の先頭n個からランダムにk個を選び，配列の先頭に並べる
+	 * 部分的なFisher-Yatesで選ぶので，乱数の消費と入れ替えはk回で済む
+	 * @param array 対象の配列
+	 * @param n 要素数
+	 * @param k 選ぶ数
+	 * @return 選んだ数（kとnの小さい方）
+	 */
+	protected int select(int[] array, int n, int k) {
+		int num = Math.min(k, n);
+		for (int i = 0; i < num; i++) {
+			int j = i + rnd.nextInt(n - i);
+			int tmp = array[i];
+			array[i] = array[j];
+			array[j] = tmp;
+		}
+		return num;
+	}
+
+	/**
+	 * 優先度の異なる2つの配列からランダムにk個を選び，firstの先頭に並べる
+	 * firstから優先して選び，足りない分だけsecondから選ぶ
+	 * firstにはsecondから選んだ分も書き込めるだけの長さが必要
+	 * @param first 優先して選ぶ配列
+	 * @param firstNum firstの要素数
+	 * @param second firstを選び切った後に選ぶ配列
+	 * @param secondNum secondの要素数
+	 * @param k 選ぶ数
+	 * @return 選んだ数
+	 */
+	protected int select(int[] first, int firstNum, int[] second, int secondNum, int k) {
+		if (firstNum >= k) {
+			return select(first, firstNum, k);
+		}
+		select(first, firstNum, firstNum);
+		int secondSelected = select(second, secondNum, k - firstNum);
+		System.arraycopy(second, 0, first, firstNum, secondSelected);
+		return firstNum + secondSelected;
+	}
+
+	/**
+	 * リストからランダムにk個を選び，リストの先頭に並べる
+	 * select(int[], int, int)のグラフの実装用
+	 * @param list 対象のリスト
+	 * @param k 選ぶ数
+	 * @return 選んだ数（kとリストの大きさの小さい方）
+	 */
+	protected <T> int select(List<T> list, int k) {
+		int n = list.size();
+		int num = Math.min(k, n);
+		for (int i = 0; i < num; i++) {
+			Collections.swap(list, i, i + rnd.nextInt(n - i));
+		}
+		return num;
+	}
+
 	/**
 	 * ターンの開始時に変更を加える
 	 */
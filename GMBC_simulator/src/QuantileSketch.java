@@ -0,0 +1,207 @@
+import java.util.Arrays;
+
+/**
+ * 分位点を推定するスケッチ（t-digest，マージ型）
+ * 値をバッファにため，いっぱいになったら重心（平均と重み）の列にまとめる<br>
+ * 重心の大きさはスケール関数 k(q) = δ/(2π) asin(2q-1) で制限するので，裾ほど細かく分位点を保ち，
+ * 重心の数は値の数によらず高々δ程度になる（メモリは一定）
+ */
+public class QuantileSketch {
+	/**
+	 * 圧縮の度合い（δ）の既定値
+	 */
+	public final static double DEFAULT_COMPRESSION = 100;
+
+	/**
+	 * 圧縮の度合い（δ）．大きいほど正確で，重心の数が増える
+	 */
+	private final double compression;
+
+	/**
+	 * 重心の平均と重み（平均の昇順）
+	 */
+	private double[] mean;
+	private double[] weight;
+	private int centroidNum;
+
+	/**
+	 * 重心にまとめる前の値
+	 */
+	private double[] buffer;
+	private int bufferNum;
+
+	/**
+	 * まとめる際の作業領域
+	 */
+	private double[] mergeMean;
+	private double[] mergeWeight;
+
+	/**
+	 * 値の数（バッファを含む）と，最小値，最大値
+	 */
+	private long count;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public QuantileSketch() {
+		this(DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param compression 圧縮の度合い（δ）
+	 */
+	public QuantileSketch(double compression) {
+		this.compression = compression;
+		// 隣り合う重心の組はkで1を超えるので，重心の数は高々 2 * (δ/2) + 2
+		int size = (int) Math.ceil(compression) + 4;
+		mean = new double[size];
+		weight = new double[size];
+		buffer = new double[size * 5];
+		mergeMean = new double[size + buffer.length];
+		mergeWeight = new double[size + buffer.length];
+	}
+
+	/**
+	 * 値を追加する
+	 * @param x 値
+	 */
+	public void add(double x) {
+		if (Double.isNaN(x)) {
+			return;
+		}
+		buffer[bufferNum++] = x;
+		count++;
+		min = Math.min(min, x);
+		max = Math.max(max, x);
+		if (bufferNum == buffer.length) {
+			merge();
+		}
+	}
+
+	/**
+	 * バッファの値を重心の列にまとめる
+	 * 値と重心を平均の順に並べ，スケール関数で許す大きさまで隣の重心と合わせる
+	 */
+	private void merge() {
+		if (bufferNum == 0) {
+			return;
+		}
+		Arrays.sort(buffer, 0, bufferNum);
+
+		// 重心の列とバッファを平均の順に合わせる
+		int n = 0;
+		for (int i = 0, j = 0; i < centroidNum || j < bufferNum; n++) {
+			if (j >= bufferNum || (i < centroidNum && mean[i] <= buffer[j])) {
+				mergeMean[n] = mean[i];
+				mergeWeight[n] = weight[i];
+				i++;
+			} else {
+				mergeMean[n] = buffer[j];
+				mergeWeight[n] = 1;
+				j++;
+			}
+		}
+		bufferNum = 0;
+
+		// 左から順に，kの幅が1を超えない範囲で合わせる
+		double total = count;
+		double weightSoFar = 0;
+		double limit = total * inverse(scale(0) + 1);
+		centroidNum = 0;
+		mean[0] = mergeMean[0];
+		weight[0] = mergeWeight[0];
+		for (int i = 1; i < n; i++) {
+			double proposed = weight[centroidNum] + mergeWeight[i];
+			if (weightSoFar + proposed <= limit) {
+				mean[centroidNum] += (mergeMean[i] - mean[centroidNum]) * mergeWeight[i] / proposed;
+				weight[centroidNum] = proposed;
+			} else {
+				weightSoFar += weight[centroidNum];
+				centroidNum++;
+				mean[centroidNum] = mergeMean[i];
+				weight[centroidNum] = mergeWeight[i];
+				limit = total * inverse(scale(weightSoFar / total) + 1);
+			}
+		}
+		centroidNum++;
+	}
+
+	/**
+	 * スケール関数 k(q)
+	 * @param q 分位
+	 * @return k
+	 */
+	private double scale(double q) {
+		return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+	}
+
+	/**
+	 * スケール関数の逆関数
+	 * @param k k
+	 * @return 分位（0から1に切り詰める）
+	 */
+	private double inverse(double k) {
+		if (k >= compression / 4) {
+			return 1;
+		}
+		return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+	}
+
+	/**
+	 * 分位点を推定する
+	 * 重心の間は線形に補間し，両端の重心の外側は最小値，最大値までを補間する
+	 * @param q 分位（0から1）
+	 * @return 分位点．値がなければNaN
+	 */
+	public double quantile(double q) {
+		merge();
+		if (count == 0) {
+			return Double.NaN;
+		}
+		if (centroidNum == 1) {
+			return mean[0];
+		}
+		double index = q * count;
+		if (index <= 0) {
+			return min;
+		}
+		if (index >= count) {
+			return max;
+		}
+
+		// 最小値から最初の重心の中心まで
+		double weightSoFar = weight[0] / 2;
+		if (index < weightSoFar) {
+			return min + (mean[0] - min) * index / weightSoFar;
+		}
+		// 重心の中心の間
+		for (int i = 0; i < centroidNum - 1; i++) {
+			double dw = (weight[i] + weight[i + 1]) / 2;
+			if (weightSoFar + dw > index) {
+				return mean[i] + (mean[i + 1] - mean[i]) * (index - weightSoFar) / dw;
+			}
+			weightSoFar += dw;
+		}
+		// 最後の重心の中心から最大値まで
+		double last = weight[centroidNum - 1] / 2;
+		return mean[centroidNum - 1] + (max - mean[centroidNum - 1]) * (index - weightSoFar) / last;
+	}
+
+	/**
+	 * 値の数を取得する
+	 * @return 値の数
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * 重心の数を取得する（バッファをまとめた後の数）
+	 * @return 重心の数
+	 */
+	public int getCentroidNum() {
+		merge();
+		return centroidNum;
+	}
+}
@@ -12,33 +12,33 @@ public class RandomGeometricGraphGenerator {
 	/**
 	 * 乱数生成器
 	 */
-	private Random rnd = new Random();
+	protected Random rnd = new Random();
 
 	/**
 	 * 作成するグラフ
 	 */
-	private static Graph graph = null;
+	private Graph graph = null;
 
 	/**
 	 * ノード数
 	 */
-	private int nodeNum;
+	protected int nodeNum;
 
 	/**
 	 * ノードが接続する半径距離（閾値）
 	 * 2ノードの座標のユークリウッド距離がradius以下であれば接続する
 	 */
-	private float radius;
+	protected float radius;
 
 	/**
 	 * x軸方向の範囲
 	 */
-	private float xRange;
+	protected float xRange;
 
 	/**
 	 * y軸方向の範囲
 	 */
-	private float yRange;
+	protected float yRange;
 
 	/**
 	 * ポワソン分布のパラメータ
@@ -77,6 +77,46 @@ public class RandomGeometricGraphGenerator {
 		this.nodeNum = (int)(((1+e) * Math.log(area) * area) / (Math.PI * radius * radius));
 	}
 
+	/**
+	 * 乱数生成器を設定する
+	 * @param rnd 乱数生成器
+	 */
+	public void setRandom(Random rnd) {
+		this.rnd = rnd;
+	}
+
+	/**
+	 * ノード数を取得する
+	 * @return ノード数
+	 */
+	public int getNodeNum() {
+		return nodeNum;
+	}
+
+	/**
+	 * ノードが接続する半径距離（閾値）を取得する
+	 * @return 半径距離
+	 */
+	public float getRadius() {
+		return radius;
+	}
+
+	/**
+	 * x軸方向の範囲を取得する
+	 * @return x軸方向の範囲
+	 */
+	public float getXRange() {
+		return xRange;
+	}
+
+	/**
+	 * y軸方向の範囲を取得する
+	 * @return y軸方向の範囲
+	 */
+	public float getYRange() {
+		return yRange;
+	}
+
 	/**
 	 * グラフの範囲を設定する
 	 * @param xRange x軸方向の範囲
@@ -90,12 +130,17 @@ public class RandomGeometricGraphGenerator {
 	/**
 	 * Random Geometric Graphを生成する
 	 * 必ず連結しているグラフを生成するが，limit回思考中に一度も連結しなかった場合はふ連結なグラフを返す
+	 * JFRで記録している場合は，生成した回数をGraphGenerateEventに記録する
 	 * @param arg グラフ名
 	 * @return 生成したグラフ
 	 */
 	public Graph generate(String arg) {
+		GraphGenerateEvent event = new GraphGenerateEvent();
+		event.begin();
+		int attempts = 0;
 		// グラフを生成
 		do {
+			attempts++;
 			graph = new SingleGraph("RGG: " + arg);
 			for(int i = 0; i < nodeNum; i++) {
 				// ノードを追加
@@ -118,6 +163,11 @@ public class RandomGeometricGraphGenerator {
 		// 連結していなければ再生成
 		}while(!Toolkit.isConnected(graph));
 
+		if (event.shouldCommit()) {
+			event.nodeNum = nodeNum;
+			event.attempts = attempts;
+			event.commit();
+		}
 		return graph;
 	}
 
@@ -0,0 +1,131 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 試行の結果の列の定義
+ * 列名と型（int, long, float）を順に持ち，CSVのヘッダやバイナリ形式の列情報に利用する
+ */
+public class ResultSchema {
+	/**
+	 * 列の型
+	 */
+	public enum Type {
+		INT, LONG, FLOAT
+	}
+
+	/**
+	 * 列名
+	 */
+	private List<String> names = new ArrayList<String>();
+
+	/**
+	 * 列の型
+	 */
+	private List<Type> types = new ArrayList<Type>();
+
+	/**
+	 * int型の列を追加する
+	 * @param name 列名
+	 * @return このスキーマ
+	 */
+	public ResultSchema addInt(String name) {
+		return add(name, Type.INT);
+	}
+
+	/**
+	 * long型の列を追加する
+	 * @param name 列名
+	 * @return このスキーマ
+	 */
+	public ResultSchema addLong(String name) {
+		return add(name, Type.LONG);
+	}
+
+	/**
+	 * float型の列を追加する
+	 * @param name 列名
+	 * @return このスキーマ
+	 */
+	public ResultSchema addFloat(String name) {
+		return add(name, Type.FLOAT);
+	}
+
+	private ResultSchema add(String name, Type type) {
+		names.add(name);
+		types.add(type);
+		return this;
+	}
+
+	/**
+	 * 列の数を取得する
+	 * @return 列の数
+	 */
+	public int size() {
+		return names.size();
+	}
+
+	/**
+	 * 列名を取得する
+	 * @param column 列の番号
+	 * @return 列名
+	 */
+	public String getName(int column) {
+		return names.get(column);
+	}
+
+	/**
+	 * 列名から列の番号を取得する
+	 * @param name 列名
+	 * @return 列の番号．存在しなければ-1
+	 */
+	public int indexOf(String name) {
+		return names.indexOf(name);
+	}
+
+	/**
+	 * 列の型を取得する
+	 * @param column 列の番号
+	 * @return 列の型
+	 */
+	public Type getType(int column) {
+		return types.get(column);
+	}
+
+	/**
+	 * CSVのヘッダ（列名をカンマで区切ったもの）を取得する
+	 * @return ヘッダ
+	 */
+	public String header() {
+		return String.join(",", names);
+	}
+
+	/**
+	 * 1試行の結果を生成する
+	 * 値は列の順に，列の型（Integer, Long, Float）で与える
+	 * @param values 各列の値
+	 * @return 試行の結果
+	 */
+	public TrialRecord record(Object... values) {
+		if (values.length != size()) {
+			throw new IllegalArgumentException("列の数が一致しない: " + values.length + " != " + size());
+		}
+		for (int i = 0; i < values.length; i++) {
+			Class<?> expected;
+			switch (types.get(i)) {
+			case INT:
+				expected = Integer.class;
+				break;
+			case LONG:
+				expected = Long.class;
+				break;
+			default:
+				expected = Float.class;
+				break;
+			}
+			if (!expected.isInstance(values[i])) {
+				throw new IllegalArgumentException("列 " + names.get(i) + " の型が一致しない: " + values[i]);
+			}
+		}
+		return new TrialRecord(this, values);
+	}
+}
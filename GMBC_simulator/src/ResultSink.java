@@ -0,0 +1,316 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 試行の結果を外部ファイルへ書き出すクラス
+ * 結果はまとめてバックグラウンドのスレッドに渡して書き出すので，シミュレーションを止めない
+ * コンソールには1行ごとではなく，一定間隔で進捗だけを表示する<br>
+ * 出力形式
+ * <ul>
+ * <li>CSV: 1行目にタイトル，2行目にヘッダ，以降に1試行1行</li>
+ * <li>BINARY: 固定長のバイナリ形式（ビッグエンディアン）<br>
+ *   ヘッダ: マジック(int, "GMBR") バージョン(int) タイトル(UTF) 列数(int) 各列の[列名(UTF) 型(byte, 0:int 1:long 2:float)]<br>
+ *   以降: 1試行ごとに各列の値を型の幅(4, 8, 4バイト)で並べる</li>
+ * </ul>
+ * どちらの形式もgzipで圧縮できる
+ */
+public class ResultSink {
+	/**
+	 * 出力形式
+	 */
+	public enum Format {
+		CSV, BINARY
+	}
+
+	/**
+	 * バイナリ形式のマジックナンバー（"GMBR"）
+	 */
+	public final static int MAGIC = 0x474D4252;
+
+	/**
+	 * バイナリ形式のバージョン
+	 */
+	public final static int VERSION = 1;
+
+	/**
+	 * 書き出しスレッドへまとめて渡す結果の数
+	 */
+	private final static int BATCH_SIZE = 256;
+
+	/**
+	 * 進捗を表示する間隔（ミリ秒）
+	 */
+	private final static long PROGRESS_INTERVAL = 5000;
+
+	/**
+	 * 書き出しの終了を表す目印
+	 */
+	private final static List<TrialRecord> END = new ArrayList<TrialRecord>();
+
+	/**
+	 * 出力形式
+	 */
+	private final Format format;
+
+	/**
+	 * タイトル（プロトコル名）
+	 */
+	private final String title;
+
+	/**
+	 * 列の定義
+	 */
+	private final ResultSchema schema;
+
+	/**
+	 * CSV形式の出力先（ファイルに出力しない場合はnull）
+	 */
+	private PrintWriter csv;
+
+	/**
+	 * バイナリ形式の出力先（ファイルに出力しない場合はnull）
+	 */
+	private DataOutputStream binary;
+
+	/**
+	 * 書き出しスレッドへ渡す結果のまとまり
+	 */
+	private final BlockingQueue<List<TrialRecord>> queue = new ArrayBlockingQueue<List<TrialRecord>>(64);
+
+	/**
+	 * 書き出しスレッドへ渡す前の結果
+	 */
+	private List<TrialRecord> batch = new ArrayList<TrialRecord>(BATCH_SIZE);
+
+	/**
+	 * 書き出しスレッド
+	 */
+	private final Thread writerThread;
+
+	/**
+	 * 書き出し中に発生したエラー
+	 */
+	private volatile IOException error;
+
+	/**
+	 * 全試行数（進捗の表示に利用）
+	 */
+	private final int total;
+
+	/**
+	 * 書き出した試行数（書き出しスレッドのみが更新）
+	 */
+	private int written = 0;
+
+	/**
+	 * 書き出しの開始時刻と，最後に進捗を表示した時刻
+	 */
+	private final long startTime = System.currentTimeMillis();
+	private long lastProgress = startTime;
+
+	/**
+	 * 進捗を表示するか
+	 */
+	private volatile boolean isProgress = true;
+
+	/**
+	 * コンストラクタ
+	 * ヘッダを書き出し，書き出しスレッドを開始する
+	 * @param path 出力先のパス（拡張子なし）．nullならファイルには出力せず進捗だけを表示する
+	 * @param format 出力形式
+	 * @param isGzip gzipで圧縮するか
+	 * @param title タイトル（プロトコル名）
+	 * @param schema 列の定義
+	 * @param total 全試行数
+	 * @throws IOException
+	 */
+	public ResultSink(String path, Format format, boolean isGzip, String title, ResultSchema schema, int total) throws IOException {
+		this.format = format;
+		this.title = title;
+		this.schema = schema;
+		this.total = total;
+
+		if (path != null) {
+			String file = path + (format == Format.CSV ? ".csv" : ".bin") + (isGzip ? ".gz" : "");
+			OutputStream out = new FileOutputStream(file);
+			if (isGzip) {
+				out = new GZIPOutputStream(out, 1 << 16);
+			}
+			out = new BufferedOutputStream(out, 1 << 16);
+			if (format == Format.CSV) {
+				csv = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			} else {
+				binary = new DataOutputStream(out);
+			}
+			writeHeader();
+		}
+
+		writerThread = new Thread(this::write, "result-sink");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * ヘッダを書き出す
+	 * @throws IOException
+	 */
+	private void writeHeader() throws IOException {
+		if (csv != null) {
+			csv.println(title);
+			csv.println(schema.header());
+			return;
+		}
+		binary.writeInt(MAGIC);
+		binary.writeInt(VERSION);
+		binary.writeUTF(title);
+		binary.writeInt(schema.size());
+		for (int i = 0; i < schema.size(); i++) {
+			binary.writeUTF(schema.getName(i));
+			binary.writeByte(schema.getType(i).ordinal());
+		}
+	}
+
+	/**
+	 * 進捗を表示するかを設定する（要約など，試行数で進捗を表さない出力では表示しない）
+	 * @param isProgress 表示するならtrue
+	 */
+	public void setProgress(boolean isProgress) {
+		this.isProgress = isProgress;
+	}
+
+	/**
+	 * 1試行の結果を受け取る
+	 * BATCH_SIZE個たまるたびに書き出しスレッドへ渡す
+	 * @param record 試行の結果
+	 */
+	public void accept(TrialRecord record) {
+		batch.add(record);
+		if (batch.size() >= BATCH_SIZE) {
+			flushBatch();
+		}
+	}
+
+	/**
+	 * たまっている結果を書き出しスレッドへ渡す
+	 */
+	private void flushBatch() {
+		if (batch.isEmpty()) {
+			return;
+		}
+		try {
+			queue.put(batch);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("結果の書き出しが中断された", e);
+		}
+		batch = new ArrayList<TrialRecord>(BATCH_SIZE);
+	}
+
+	/**
+	 * 書き出しスレッドの処理
+	 * 終了の目印を受け取るまで，受け取った結果を順に書き出す
+	 */
+	private void write() {
+		try {
+			List<TrialRecord> records;
+			while ((records = queue.take()) != END) {
+				// エラーの後も，受け取り側が詰まらないよう読み捨てる
+				if (error != null) {
+					continue;
+				}
+				try {
+					for (TrialRecord record : records) {
+						writeRecord(record);
+					}
+				} catch (IOException e) {
+					error = e;
+				}
+				written += records.size();
+				long now = System.currentTimeMillis();
+				if (now - lastProgress >= PROGRESS_INTERVAL) {
+					lastProgress = now;
+					printProgress(now);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 1試行の結果を書き出す
+	 * @param record 試行の結果
+	 * @throws IOException
+	 */
+	private void writeRecord(TrialRecord record) throws IOException {
+		if (csv != null) {
+			csv.println(record.toCsv());
+			return;
+		}
+		if (binary == null) {
+			return;
+		}
+		for (int i = 0; i < schema.size(); i++) {
+			switch (schema.getType(i)) {
+			case INT:
+				binary.writeInt(record.get(i).intValue());
+				break;
+			case LONG:
+				binary.writeLong(record.get(i).longValue());
+				break;
+			case FLOAT:
+				binary.writeFloat(record.get(i).floatValue());
+				break;
+			}
+		}
+	}
+
+	/**
+	 * 進捗を1行表示する
+	 * @param now 現在時刻
+	 */
+	private void printProgress(long now) {
+		if (!isProgress) {
+			return;
+		}
+		double sec = Math.max(now - startTime, 1) / 1000.0;
+		System.out.println(String.format("%s: %d/%d trials (%.1f%%), %.1f trials/s",
+				title, written, total, 100.0 * written / Math.max(total, 1), written / sec));
+	}
+
+	/**
+	 * 残りの結果を書き出して，出力先を閉じる
+	 * @throws IOException 書き出しに失敗した場合
+	 * @throws InterruptedException
+	 */
+	public void close() throws IOException, InterruptedException {
+		flushBatch();
+		queue.put(END);
+		writerThread.join();
+		printProgress(System.currentTimeMillis());
+
+		if (csv != null) {
+			csv.close();
+			if (csv.checkError() && error == null) {
+				error = new IOException("CSVの書き出しに失敗");
+			}
+		}
+		if (binary != null) {
+			binary.close();
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+}
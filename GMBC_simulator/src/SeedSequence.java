@@ -0,0 +1,51 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * シミュレーションで利用する乱数のシードを階層的に導出するクラス
+ * マスターシード → グラフ → 試行 → 各コンポーネント（ジェネレータ，グラフの変化，プロトコル，リンクの遅延）の順に，
+ * 親のシードと番号だけから子のシードを決めるので，実行の順序や並列数によらず同じ乱数列になる
+ */
+public class SeedSequence {
+	/**
+	 * グラフのジェネレータの乱数（グラフのシードから導出）
+	 */
+	public final static int GENERATOR = -1;
+
+	/**
+	 * グラフの変化（TimeVaryingGraph, ChurnGraph）の乱数（試行のシードから導出）
+	 */
+	public final static int DYNAMICS = -2;
+
+	/**
+	 * プロトコルの乱数（試行のシードから導出）
+	 */
+	public final static int PROTOCOL = -3;
+
+	/**
+	 * リンクの遅延（EventDrivenSimulation）の乱数（試行のシードから導出）
+	 */
+	public final static int DELAY = -4;
+
+	/**
+	 * 親のシードと番号から子のシードを導出する
+	 * グラフや試行は0以上の番号，コンポーネントは負の定数を用いる
+	 * @param seed 親のシード
+	 * @param index 子の番号
+	 * @return 子のシード
+	 */
+	public static long derive(long seed, long index) {
+		// SplittableRandomの混合関数で，近い番号からも無相関なシードを得る
+		return new SplittableRandom(seed + new SplittableRandom(index).nextLong()).nextLong();
+	}
+
+	/**
+	 * 親のシードと番号から乱数生成器を生成する
+	 * @param seed 親のシード
+	 * @param index 子の番号
+	 * @return 乱数生成器
+	 */
+	public static Random random(long seed, long index) {
+		return new Random(derive(seed, index));
+	}
+}
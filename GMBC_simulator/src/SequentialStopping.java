@@ -0,0 +1,368 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * パラメータごとの試行数を信頼区間で決める逐次停止
+ * パラメータの値ごとにグラフ（GRAPH_TRIALS回の試行を行うセル）を順に実行し，
+ * 監視する列（到達率，メッセージ数）の平均の信頼区間が十分に狭くなった時点で，そのパラメータのグラフの追加をやめる<br>
+ * 同じグラフでの試行は独立でないので，信頼区間はグラフごとの平均を標本としてt分布で求める<br>
+ * 並列に実行するため，停止を判定する前に次のグラフを先行して投入しておく．先行するグラフは，停止していない最初のパラメータから順に選ぶ．
+ * 停止したパラメータの先行したグラフの結果は捨てるので，どのグラフまで使うかは並列数によらず同じになる<br>
+ * 試行の結果は使うと決めた時点で出力する．ただし前のパラメータが停止するまでは後のパラメータの結果をためておき，
+ * パラメータの追加した順に出力するので，出力の順序は並列数によらず同じになる（ためる結果は高々先行するグラフの数程度）<br>
+ * 要約（CellSummary）を設定すると，停止したパラメータの要約の1行も追加した順に出力する
+ */
+public class SequentialStopping {
+	/**
+	 * 信頼係数95%の標準正規分布の分位点
+	 */
+	private final static double Z = 1.959964;
+
+	/**
+	 * グラフの実行
+	 */
+	public interface GraphCell {
+		/**
+		 * 1つのグラフでシミュレーションを実行する
+		 * @param graphIndex グラフのID
+		 * @return 試行の結果
+		 * @throws Exception
+		 */
+		List<TrialRecord> simulate(int graphIndex) throws Exception;
+	}
+
+	/**
+	 * パラメータの値ごとの状態
+	 */
+	private static class Parameter {
+		/**
+		 * 最初のグラフのID（k番目のグラフのIDは firstGraph + k）
+		 */
+		int firstGraph;
+		GraphCell cell;
+		/**
+		 * 投入したグラフの数と，結果を使ったグラフの数
+		 */
+		int submitted;
+		int accepted;
+		/**
+		 * 監視する列ごとの，グラフごとの平均の平均と偏差平方和（Welford法）
+		 */
+		double[] mean;
+		double[] m2;
+		/**
+		 * 前のパラメータの停止を待つ結果（ためていなければnull）
+		 */
+		List<TrialRecord> rows;
+		/**
+		 * 結果の要約（要約しない場合はnull）
+		 */
+		CellSummary.Cell summary;
+		boolean isDone;
+	}
+
+	/**
+	 * 投入したグラフ
+	 */
+	private static class Pending {
+		Parameter parameter;
+		Future<List<TrialRecord>> result;
+		Pending(Parameter parameter, Future<List<TrialRecord>> result) {
+			this.parameter = parameter;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * 監視する列の番号
+	 */
+	private int[] columns;
+
+	/**
+	 * 1つのグラフでの試行回数
+	 */
+	private int graphTrials;
+
+	/**
+	 * パラメータごとの最小，最大のグラフの数
+	 */
+	private int minGraphs;
+	private int maxGraphs;
+
+	/**
+	 * 信頼区間の半幅の上限（平均に対する割合）．0以下なら停止せず，常に最大のグラフの数を実行する
+	 */
+	private double width;
+
+	/**
+	 * 先行して投入するグラフの数
+	 */
+	private int window;
+
+	/**
+	 * パラメータの値（追加した順）
+	 */
+	private List<Parameter> parameters = new ArrayList<Parameter>();
+
+	/**
+	 * 実行した試行の数（結果を捨てたものを除く）
+	 */
+	private int trialNum;
+
+	/**
+	 * 試行の結果の出力先（出力しない場合はnull）
+	 */
+	private Consumer<TrialRecord> out;
+
+	/**
+	 * 出力を終えたパラメータの数（このパラメータの結果はためずに出力する）
+	 */
+	private int emitted;
+
+	/**
+	 * 結果の要約と，その出力先
+	 */
+	private CellSummary summary;
+	private Consumer<TrialRecord> summaryOut;
+
+	/**
+	 * コンストラクタ
+	 * @param schema 結果の列の定義
+	 * @param graphTrials 1つのグラフでの試行回数
+	 * @param maxGraphs パラメータごとの最大のグラフの数
+	 * @param threadNum 並列に実行するスレッド数
+	 * @param names 監視する列名
+	 */
+	public SequentialStopping(ResultSchema schema, int graphTrials, int maxGraphs, int threadNum, String... names) {
+		this.graphTrials = graphTrials;
+		this.maxGraphs = maxGraphs;
+		this.minGraphs = maxGraphs;
+		this.window = Math.max(threadNum, 1) * 2;
+		columns = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			columns[i] = schema.indexOf(names[i]);
+			if (columns[i] < 0) {
+				throw new IllegalArgumentException("列がない: " + names[i]);
+			}
+		}
+	}
+
+	/**
+	 * 停止の条件を設定する
+	 * 試行数はグラフの数に切り上げ，信頼区間を求めるために最小でも3つのグラフを実行する
+	 * @param width 信頼区間の半幅の上限（平均に対する割合）．0以下なら停止しない
+	 * @param minTrials パラメータごとの最小の試行数
+	 * @param maxTrials パラメータごとの最大の試行数（0以下ならコンストラクタで指定した数）
+	 */
+	public void setStopping(double width, int minTrials, int maxTrials) {
+		this.width = width;
+		if (maxTrials > 0) {
+			maxGraphs = (maxTrials + graphTrials - 1) / graphTrials;
+		}
+		minGraphs = Math.min(Math.max((minTrials + graphTrials - 1) / graphTrials, 3), maxGraphs);
+	}
+
+	/**
+	 * パラメータごとの結果の要約を設定する
+	 * @param summary 結果の要約
+	 * @param summaryOut 要約の出力先
+	 */
+	public void setSummary(CellSummary summary, Consumer<TrialRecord> summaryOut) {
+		this.summary = summary;
+		this.summaryOut = summaryOut;
+	}
+
+	/**
+	 * パラメータの値を追加する
+	 * @param firstGraph 最初のグラフのID．呼び出し側は最大のグラフの数だけIDを確保する
+	 * @param cell グラフの実行
+	 */
+	public void add(int firstGraph, GraphCell cell) {
+		Parameter parameter = new Parameter();
+		parameter.firstGraph = firstGraph;
+		parameter.cell = cell;
+		parameter.mean = new double[columns.length];
+		parameter.m2 = new double[columns.length];
+		parameters.add(parameter);
+	}
+
+	/**
+	 * パラメータごとの最大のグラフの数を取得する
+	 * @return グラフの数
+	 */
+	public int getMaxGraphs() {
+		return maxGraphs;
+	}
+
+	/**
+	 * 全てのパラメータで最大の試行数を実行した場合の試行数を取得する
+	 * @return 試行数
+	 */
+	public int getMaxTrials() {
+		return parameters.size() * maxGraphs * graphTrials;
+	}
+
+	/**
+	 * パラメータの数を取得する
+	 * @return パラメータの数
+	 */
+	public int getParameterNum() {
+		return parameters.size();
+	}
+
+	/**
+	 * 全てのパラメータを停止するまで実行する
+	 * @param scheduler グラフを実行するスケジューラ
+	 * @param out 結果の出力先（nullなら試行の結果は出力せず，要約だけを出力する）
+	 * @throws InterruptedException
+	 */
+	public void run(TrialScheduler scheduler, Consumer<TrialRecord> out) throws InterruptedException {
+		Queue<Pending> pending = new ArrayDeque<Pending>();
+		emitted = 0;
+		trialNum = 0;
+		this.out = out;
+		for (Parameter parameter : parameters) {
+			parameter.rows = null;
+			parameter.summary = summary != null ? summary.newCell() : null;
+		}
+		while (true) {
+			// 停止していない最初のパラメータから順に，グラフを先行して投入
+			for (int p = emitted; p < parameters.size() && pending.size() < window; p++) {
+				Parameter parameter = parameters.get(p);
+				while (!parameter.isDone && parameter.submitted < maxGraphs && pending.size() < window) {
+					final int graphIndex = parameter.firstGraph + parameter.submitted++;
+					final GraphCell cell = parameter.cell;
+					pending.add(new Pending(parameter, scheduler.start(() -> cell.simulate(graphIndex))));
+				}
+			}
+			Pending graph = pending.poll();
+			if (graph == null) {
+				break;
+			}
+			// 停止したパラメータの先行したグラフは捨てる
+			if (graph.parameter.isDone) {
+				continue;
+			}
+			accept(graph.parameter, scheduler.get(graph.result));
+			if (graph.parameter.isDone) {
+				for (Pending p : pending) {
+					if (p.parameter == graph.parameter) {
+						p.result.cancel(false);
+					}
+				}
+			}
+
+			// 停止したパラメータの要約を出力し，次のパラメータのためていた結果を出力する
+			while (emitted < parameters.size() && parameters.get(emitted).isDone) {
+				Parameter parameter = parameters.get(emitted++);
+				if (parameter.summary != null) {
+					summaryOut.accept(parameter.summary.toRecord());
+					parameter.summary = null;
+				}
+				if (emitted < parameters.size()) {
+					flush(parameters.get(emitted));
+				}
+			}
+		}
+
+		if (width > 0) {
+			System.out.printf("sequential stopping: %d / %d trials (%.1f%%)%n", trialNum, getMaxTrials(),
+					100.0 * trialNum / Math.max(getMaxTrials(), 1));
+		}
+	}
+
+	/**
+	 * グラフの結果を使い，停止を判定する
+	 * 使うと決めた結果は，前のパラメータが全て停止していれば出力し，そうでなければためておく
+	 * @param parameter パラメータ
+	 * @param rows グラフでの試行の結果
+	 */
+	private void accept(Parameter parameter, List<TrialRecord> rows) {
+		if (out != null) {
+			if (parameter == parameters.get(emitted)) {
+				for (TrialRecord row : rows) {
+					out.accept(row);
+				}
+			} else {
+				if (parameter.rows == null) {
+					parameter.rows = new ArrayList<TrialRecord>();
+				}
+				parameter.rows.addAll(rows);
+			}
+		}
+		if (parameter.summary != null) {
+			for (TrialRecord row : rows) {
+				parameter.summary.accept(row);
+			}
+		}
+		parameter.accepted++;
+		trialNum += rows.size();
+
+		// グラフごとの平均を1つの標本とする
+		for (int c = 0; c < columns.length; c++) {
+			double sum = 0;
+			for (TrialRecord row : rows) {
+				sum += row.get(columns[c]).doubleValue();
+			}
+			double x = sum / Math.max(rows.size(), 1);
+			double delta = x - parameter.mean[c];
+			parameter.mean[c] += delta / parameter.accepted;
+			parameter.m2[c] += delta * (x - parameter.mean[c]);
+		}
+
+		if (parameter.accepted >= maxGraphs) {
+			parameter.isDone = true;
+		} else if (width > 0 && parameter.accepted >= minGraphs) {
+			parameter.isDone = isNarrow(parameter);
+		}
+	}
+
+	/**
+	 * ためていた結果を出力する
+	 * @param parameter 前のパラメータが全て停止したパラメータ
+	 */
+	private void flush(Parameter parameter) {
+		if (parameter.rows != null) {
+			for (TrialRecord row : parameter.rows) {
+				out.accept(row);
+			}
+			parameter.rows = null;
+		}
+	}
+
+	/**
+	 * 監視する全ての列で，信頼区間の半幅が上限以下か
+	 * @param parameter パラメータ
+	 * @return 上限以下ならtrue
+	 */
+	private boolean isNarrow(Parameter parameter) {
+		int n = parameter.accepted;
+		double t = getT(n - 1);
+		for (int c = 0; c < columns.length; c++) {
+			double half = t * Math.sqrt(parameter.m2[c] / (n - 1) / n);
+			if (half > width * Math.abs(parameter.mean[c])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 自由度nuのt分布の両側95%点
+	 * 正規分布の分位点からのCornish-Fisher展開による近似（自由度2以上で誤差は数%以内）
+	 * @param nu 自由度
+	 * @return 分位点
+	 */
+	private static double getT(int nu) {
+		double z = Z;
+		double z3 = z * z * z;
+		double z5 = z3 * z * z;
+		double z7 = z5 * z * z;
+		return z + (z3 + z) / (4.0 * nu) + (5 * z5 + 16 * z3 + 3 * z) / (96.0 * nu * nu)
+				+ (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384.0 * nu * nu * nu);
+	}
+}
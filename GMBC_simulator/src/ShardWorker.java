@@ -0,0 +1,277 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * シャードの実行を担当するプロセス（ShardedSimulationが起動する）
+ * 担当するエリアのノードと，それに隣接する他のシャードのノードからなるグラフでプロトコルを実行し，
+ * 他のシャードのノードへの送信はhopごとにまとめてコーディネータへ送る<br>
+ * 1hopの処理はProtocolのCSR形式での実行と同じで，転送先の選択はプロトコルのchoiceNodeで行う
+ */
+public class ShardWorker {
+	/**
+	 * シャードのグラフ
+	 * 先頭のlocalNum個が担当するノード，残りが隣接する他のシャードのノード
+	 */
+	private CsrGraph csr;
+
+	/**
+	 * 担当するノードの数
+	 */
+	private int localNum;
+
+	/**
+	 * 各ノードの元のグラフでのインデックス
+	 * 担当するノードと他のシャードのノードで，それぞれ昇順に並ぶ
+	 */
+	private int[] global;
+
+	/**
+	 * 実行するプロトコル
+	 */
+	private Protocol protocol;
+
+	/**
+	 * 受信済みのノード
+	 */
+	private BitSet infection = new BitSet();
+
+	/**
+	 * メッセージ送信待ちのノード（送信者と受信者の組）と，次のhopでの送信待ち
+	 */
+	private int[] waitFrom;
+	private int[] waitTo;
+	private int waitNum;
+	private int[] nextFrom;
+	private int[] nextTo;
+	private int nextNum;
+
+	/**
+	 * choiceNodeが選択したノードを書き込むバッファ
+	 */
+	private int[] sendBuffer;
+
+	/**
+	 * 他のシャードのノードへの送信（元のグラフでの送信者と受信者を交互に並べる）
+	 */
+	private int[] outgoing = new int[1024];
+	private int outgoingNum;
+
+	/**
+	 * コンストラクタ
+	 * @param csr シャードのグラフ
+	 * @param localNum 担当するノードの数
+	 * @param global 各ノードの元のグラフでのインデックス
+	 * @param protocol 実行するプロトコル
+	 */
+	public ShardWorker(CsrGraph csr, int localNum, int[] global, Protocol protocol) {
+		this.csr = csr;
+		this.localNum = localNum;
+		this.global = global;
+		this.protocol = protocol;
+		protocol.setGraph(csr);
+		protocol.setLocalNodeNum(localNum);
+		// 各ノードは高々1度しか送信待ちにならない
+		waitFrom = new int[localNum];
+		waitTo = new int[localNum];
+		nextFrom = new int[localNum];
+		nextTo = new int[localNum];
+		int maxDegree = 0;
+		for (int v = 0; v < localNum; v++) {
+			maxDegree = Math.max(maxDegree, csr.getDegree(v));
+		}
+		sendBuffer = new int[maxDegree];
+	}
+
+	/**
+	 * 試行の初期化
+	 * @param trialSeed 試行のシード
+	 * @param shard シャードの番号
+	 * @param source ソースノード（担当していなければ-1）
+	 */
+	public void init(long trialSeed, int shard, int source) {
+		// プロトコルの乱数はシャードごとに試行のシードから導出する
+		protocol.setRandom(SeedSequence.random(SeedSequence.derive(trialSeed, SeedSequence.PROTOCOL), shard));
+		protocol.init();
+		infection.clear();
+		waitNum = 0;
+		if (source >= 0) {
+			infection.set(source);
+			waitFrom[0] = -1;
+			waitTo[0] = source;
+			waitNum = 1;
+		}
+	}
+
+	/**
+	 * 1hopだけ進める
+	 * 担当するノードへの送信はこのhopで受信済みにし，他のシャードのノードへの送信はoutgoingにためる
+	 * @return [送信したメッセージ数, 受信したノードの数]
+	 */
+	public int[] runHop() {
+		nextNum = 0;
+		outgoingNum = 0;
+		int receivedNum = 0;
+
+		// ターンの開始時の処理（GMBCのMBCの交換）のメッセージも数える
+		int before = protocol.getMsgNum();
+		protocol.updateInTern();
+		int msgNum = protocol.getMsgNum() - before;
+
+		for (int i = 0; i < waitNum; i++) {
+			int from = waitFrom[i];
+			int receive = waitTo[i];
+
+			// 転送先を選択する
+			int sendNum = from < 0 ? protocol.firstChoiceNode(receive, sendBuffer)
+					: protocol.choiceNode(from, receive, sendBuffer);
+			msgNum += sendNum;
+
+			// 決定した転送先へ転送
+			for (int s = 0; s < sendNum; s++) {
+				int to = sendBuffer[s];
+				if (to >= localNum) {
+					addOutgoing(global[receive], global[to]);
+				} else if (!infection.get(to)) {
+					infection.set(to);
+					receivedNum++;
+					nextFrom[nextNum] = receive;
+					nextTo[nextNum] = to;
+					nextNum++;
+				}
+			}
+		}
+
+		// 送信待ちを入れ替え
+		int[] tmp = waitFrom;
+		waitFrom = nextFrom;
+		nextFrom = tmp;
+		tmp = waitTo;
+		waitTo = nextTo;
+		nextTo = tmp;
+		waitNum = nextNum;
+		return new int[] {msgNum, receivedNum};
+	}
+
+	/**
+	 * 他のシャードから届いたメッセージを受信する
+	 * 受信済みでなければ，次のhopでの送信待ちに加える
+	 * @param from 送信者（元のグラフでのインデックス）
+	 * @param to 受信者（元のグラフでのインデックス）
+	 * @return 受信済みにしたならtrue
+	 */
+	public boolean deliver(int from, int to) {
+		int receive = toLocal(to, 0, localNum);
+		if (infection.get(receive)) {
+			return false;
+		}
+		infection.set(receive);
+		waitFrom[waitNum] = toLocal(from, localNum, global.length);
+		waitTo[waitNum] = receive;
+		waitNum++;
+		return true;
+	}
+
+	/**
+	 * 元のグラフでのインデックスからシャードのグラフでのインデックスを求める
+	 * @param node 元のグラフでのインデックス
+	 * @param start 探す範囲の開始
+	 * @param end 探す範囲の終了
+	 * @return シャードのグラフでのインデックス
+	 */
+	private int toLocal(int node, int start, int end) {
+		int v = Arrays.binarySearch(global, start, end, node);
+		if (v < 0) {
+			throw new IllegalStateException("シャードのグラフにないノード: " + node);
+		}
+		return v;
+	}
+
+	/**
+	 * 他のシャードのノードへの送信をためる
+	 * @param from 送信者（元のグラフでのインデックス）
+	 * @param to 受信者（元のグラフでのインデックス）
+	 */
+	private void addOutgoing(int from, int to) {
+		if (outgoingNum + 2 > outgoing.length) {
+			outgoing = Arrays.copyOf(outgoing, outgoing.length * 2);
+		}
+		outgoing[outgoingNum++] = from;
+		outgoing[outgoingNum++] = to;
+	}
+
+	/**
+	 * 送信待ちのノードの数
+	 * @return ノードの数
+	 */
+	public int getWaitNum() {
+		return waitNum;
+	}
+
+	/**
+	 * コーディネータに接続し，指示に従って試行を実行する
+	 * 使い方: ShardWorker ホスト ポート シャードの番号
+	 * @param args ホスト，ポート，シャードの番号
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int shard = Integer.parseInt(args[2]);
+		try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+			out.writeInt(shard);
+			out.flush();
+
+			// シャードのグラフとプロトコルの設定
+			CsrGraph csr = CsrGraphFile.read(Paths.get(in.readUTF()), null);
+			int localNum = in.readInt();
+			int[] global = new int[in.readInt()];
+			for (int v = 0; v < global.length; v++) {
+				global[v] = in.readInt();
+			}
+			String protocolId = in.readUTF();
+			int fanout = in.readInt();
+			float updateRate = in.readFloat();
+			ShardWorker worker = new ShardWorker(csr, localNum, global,
+					Simulate.getProtocol(protocolId, fanout, updateRate));
+
+			// コーディネータの指示を実行
+			while (true) {
+				int command = in.readInt();
+				if (command == ShardedSimulation.TRIAL) {
+					worker.init(in.readLong(), shard, in.readInt());
+				} else if (command == ShardedSimulation.HOP) {
+					int[] count = worker.runHop();
+					out.writeInt(count[0]);
+					out.writeInt(count[1]);
+					out.writeInt(worker.outgoingNum / 2);
+					for (int i = 0; i < worker.outgoingNum; i++) {
+						out.writeInt(worker.outgoing[i]);
+					}
+					out.flush();
+				} else if (command == ShardedSimulation.DELIVER) {
+					int num = in.readInt();
+					int receivedNum = 0;
+					for (int i = 0; i < num; i++) {
+						int from = in.readInt();
+						if (worker.deliver(from, in.readInt())) {
+							receivedNum++;
+						}
+					}
+					out.writeInt(receivedNum);
+					out.writeInt(worker.getWaitNum());
+					out.flush();
+				} else {
+					break;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,462 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * グラフをエリア（AreaPartition）ごとのシャードに分け，シャードごとのプロセス（ShardWorker）でプロトコルを実行するクラス
+ * 各シャードは担当するノードと，それに隣接する他のシャードのノードからなる誘導部分グラフだけを持つので，
+ * プロトコルの状態（GMBCのMBCなど）を複数のJVMに分けて持てる<br>
+ * 1hopは2段階で進める
+ * <ol>
+ * <li>HOP: 各シャードが送信待ちのノードから転送し，他のシャードのノードへの送信をまとめて返す</li>
+ * <li>DELIVER: コーディネータが送信を受信者のシャードへ振り分け，各シャードが受信して送信待ちの数を返す</li>
+ * </ol>
+ * 全てのシャードで送信待ちがなくなれば試行を終える<br>
+ * メッセージ数と受信したノードの数はシャードごとの数の和，ホップ数は試行を終えたhopなので，1プロセスでの実行と同じく集計される．
+ * Floodingの結果は1プロセスでの実行と一致する．
+ * 乱数を使うプロトコルはシャードごとに導出した乱数を使うので，試行ごとの結果は一致しないが，結果の分布は同じになる<br>
+ * グラフの変化には対応しない（静的なグラフのみ）
+ */
+public class ShardedSimulation implements Closeable {
+	// コーディネータからShardWorkerへの指示
+	/**
+	 * 終了
+	 */
+	final static int QUIT = 0;
+	/**
+	 * 試行の初期化（試行のシード，ソースノード）
+	 */
+	final static int TRIAL = 1;
+	/**
+	 * 1hopの転送
+	 */
+	final static int HOP = 2;
+	/**
+	 * 他のシャードからのメッセージの受信
+	 */
+	final static int DELIVER = 3;
+
+	/**
+	 * 対象となるグラフ
+	 */
+	private CsrGraph csr;
+
+	/**
+	 * 各ノードを担当するシャード
+	 */
+	private int[] owner;
+
+	/**
+	 * シャードの数
+	 */
+	private int shardNum;
+
+	/**
+	 * 各シャードが担当するノード（元のグラフでのインデックスの昇順）
+	 */
+	private int[][] shardNodes;
+
+	/**
+	 * ソースノードを担当するシャードと，シャードのグラフでのインデックス
+	 */
+	private int sourceShard;
+	private int sourceLocal;
+
+	/**
+	 * シャードのグラフを書き出すディレクトリ
+	 */
+	private Path dir;
+
+	/**
+	 * ShardWorkerのプロセスと接続
+	 */
+	private List<Process> workers = new ArrayList<Process>();
+	private Socket[] sockets;
+	private DataInputStream[] in;
+	private DataOutputStream[] out;
+
+	/**
+	 * シャードごとの振り分けた送信（送信者と受信者を交互に並べる）
+	 */
+	private int[][] route;
+	private int[] routeNum;
+
+	// 取得するデータ
+	/**
+	 * メッセージを受信したノードの数
+	 */
+	private int receivedNodeNum;
+
+	/**
+	 * メッセージ数
+	 */
+	private int msgNum;
+
+	/**
+	 * ホップ数
+	 */
+	private int hopNum;
+
+	/**
+	 * コンストラクタ
+	 * 各ノードは座標が属するエリアのシャードが担当する（ノードのないエリアはシャードにしない）
+	 * @param csr 対象となるグラフ
+	 * @param partition エリアの分割
+	 */
+	public ShardedSimulation(CsrGraph csr, AreaPartition partition) {
+		this.csr = csr;
+		int nodeNum = csr.getNodeCount();
+
+		// エリアごとのノード数を数え，ノードのあるエリアにシャードの番号を振る
+		int[] area = new int[nodeNum];
+		int[] count = new int[partition.size()];
+		for (int v = 0; v < nodeNum; v++) {
+			area[v] = partition.getArea((int) csr.getX(v), (int) csr.getY(v));
+			count[area[v]]++;
+		}
+		int[] shardOf = new int[partition.size()];
+		for (int a = 0; a < count.length; a++) {
+			shardOf[a] = count[a] > 0 ? shardNum++ : -1;
+		}
+
+		// 各シャードが担当するノード（インデックスの昇順）
+		owner = new int[nodeNum];
+		shardNodes = new int[shardNum][];
+		for (int a = 0; a < count.length; a++) {
+			if (shardOf[a] >= 0) {
+				shardNodes[shardOf[a]] = new int[count[a]];
+				count[a] = 0;
+			}
+		}
+		for (int v = 0; v < nodeNum; v++) {
+			int s = shardOf[area[v]];
+			owner[v] = s;
+			shardNodes[s][count[area[v]]++] = v;
+		}
+
+		int source = csr.getIndex("n1");
+		sourceShard = owner[source];
+		sourceLocal = Arrays.binarySearch(shardNodes[sourceShard], source);
+
+		route = new int[shardNum][1024];
+		routeNum = new int[shardNum];
+	}
+
+	/**
+	 * シャードのグラフを書き出し，シャードごとにShardWorkerのプロセスを起動する
+	 * ShardWorkerは同じJava，同じクラスパスで起動し，システムプロパティ shardJvmOptions でJVMのオプションを指定できる
+	 * @param protocolId プロトコルのID
+	 * @param fanout fanout数
+	 * @param updateRate MBCの更新頻度
+	 * @throws IOException
+	 */
+	public void start(String protocolId, int fanout, float updateRate) throws IOException {
+		dir = Files.createTempDirectory("shards");
+		sockets = new Socket[shardNum];
+		in = new DataInputStream[shardNum];
+		out = new DataOutputStream[shardNum];
+
+		try (ServerSocket server = new ServerSocket(0, shardNum, InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout(60000);
+
+			// プロセスの起動
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			String options = System.getProperty("shardJvmOptions", "").trim();
+			for (int s = 0; s < shardNum; s++) {
+				List<String> command = new ArrayList<String>();
+				command.add(java);
+				if (!options.isEmpty()) {
+					command.addAll(Arrays.asList(options.split("\\s+")));
+				}
+				command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), "ShardWorker",
+						server.getInetAddress().getHostAddress(), server.getLocalPort() + "", s + ""));
+				workers.add(new ProcessBuilder(command).inheritIO().start());
+			}
+
+			// 接続（シャードの番号で並べる）
+			for (int i = 0; i < shardNum; i++) {
+				Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+				int s = input.readInt();
+				sockets[s] = socket;
+				in[s] = input;
+				out[s] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+			}
+		}
+
+		// シャードのグラフを書き出して送る
+		int[] localOf = new int[csr.getNodeCount()];
+		int[] edgeOf = new int[csr.getEdgeCount()];
+		Arrays.fill(localOf, -1);
+		Arrays.fill(edgeOf, -1);
+		for (int s = 0; s < shardNum; s++) {
+			int[] nodes = getShardGraphNodes(s);
+			Path path = dir.resolve("shard-" + s + ".csr");
+			CsrGraphFile.write(createShardGraph(nodes, localOf, edgeOf), "shard-" + s, path);
+
+			out[s].writeUTF(path.toString());
+			out[s].writeInt(shardNodes[s].length);
+			out[s].writeInt(nodes.length);
+			for (int v : nodes) {
+				out[s].writeInt(v);
+			}
+			out[s].writeUTF(protocolId);
+			out[s].writeInt(fanout);
+			out[s].writeFloat(updateRate);
+			out[s].flush();
+		}
+	}
+
+	/**
+	 * シャードのグラフのノードを求める
+	 * 担当するノードの後に，それに隣接する他のシャードのノードを並べる（それぞれインデックスの昇順）
+	 * @param s シャードの番号
+	 * @return 元のグラフでのインデックス
+	 */
+	private int[] getShardGraphNodes(int s) {
+		int[] ghost = new int[16];
+		int ghostNum = 0;
+		for (int v : shardNodes[s]) {
+			int start = csr.getOffset(v);
+			for (int k = start; k < start + csr.getDegree(v); k++) {
+				int to = csr.getNeighbor(k);
+				if (owner[to] != s) {
+					if (ghostNum == ghost.length) {
+						ghost = Arrays.copyOf(ghost, ghostNum * 2);
+					}
+					ghost[ghostNum++] = to;
+				}
+			}
+		}
+		int[] sorted = Arrays.copyOf(ghost, ghostNum);
+		Arrays.sort(sorted);
+		int[] nodes = Arrays.copyOf(shardNodes[s], shardNodes[s].length + ghostNum);
+		int num = shardNodes[s].length;
+		for (int i = 0; i < ghostNum; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1]) {
+				nodes[num++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(nodes, num);
+	}
+
+	/**
+	 * ノードの誘導部分グラフを作成する
+	 * 隣接ノードの順序は元のグラフと同じにするので，choiceNodeは元のグラフと同じ順序で隣接ノードを扱う
+	 * @param nodes 元のグラフでのインデックス
+	 * @param localOf 作業用（全て-1で渡し，全て-1に戻す）
+	 * @param edgeOf 作業用（全て-1で渡し，全て-1に戻す）
+	 * @return 部分グラフ
+	 */
+	private CsrGraph createShardGraph(int[] nodes, int[] localOf, int[] edgeOf) {
+		for (int i = 0; i < nodes.length; i++) {
+			localOf[nodes[i]] = i;
+		}
+		int[] offset = new int[nodes.length + 1];
+		int[] neighbor = new int[16];
+		int[] edgeId = new int[16];
+		int[] edgeNode0 = new int[16];
+		int[] edgeNode1 = new int[16];
+		int[] edges = new int[16];
+		int pos = 0;
+		int edgeNum = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			offset[i] = pos;
+			int v = nodes[i];
+			int start = csr.getOffset(v);
+			for (int k = start; k < start + csr.getDegree(v); k++) {
+				int to = localOf[csr.getNeighbor(k)];
+				if (to < 0) {
+					continue;
+				}
+				int e = csr.getEdgeId(k);
+				if (edgeOf[e] < 0) {
+					if (edgeNum == edgeNode0.length) {
+						edgeNode0 = Arrays.copyOf(edgeNode0, edgeNum * 2);
+						edgeNode1 = Arrays.copyOf(edgeNode1, edgeNum * 2);
+						edges = Arrays.copyOf(edges, edgeNum * 2);
+					}
+					edgeNode0[edgeNum] = i;
+					edgeNode1[edgeNum] = to;
+					edges[edgeNum] = e;
+					edgeOf[e] = edgeNum++;
+				}
+				if (pos == neighbor.length) {
+					neighbor = Arrays.copyOf(neighbor, pos * 2);
+					edgeId = Arrays.copyOf(edgeId, pos * 2);
+				}
+				neighbor[pos] = to;
+				edgeId[pos] = edgeOf[e];
+				pos++;
+			}
+		}
+		offset[nodes.length] = pos;
+
+		// 作業用の配列を戻す
+		float[] x = new float[nodes.length];
+		float[] y = new float[nodes.length];
+		String[] ids = new String[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			localOf[nodes[i]] = -1;
+			x[i] = csr.getX(nodes[i]);
+			y[i] = csr.getY(nodes[i]);
+			ids[i] = csr.getId(nodes[i]);
+		}
+		for (int i = 0; i < edgeNum; i++) {
+			edgeOf[edges[i]] = -1;
+		}
+		return new CsrGraph(offset, Arrays.copyOf(neighbor, pos), Arrays.copyOf(edgeId, pos),
+				Arrays.copyOf(edgeNode0, edgeNum), Arrays.copyOf(edgeNode1, edgeNum), x, y, ids);
+	}
+
+	/**
+	 * 1試行を実行する
+	 * @param trialSeed 試行のシード
+	 * @throws IOException
+	 */
+	public void run(long trialSeed) throws IOException {
+		for (int s = 0; s < shardNum; s++) {
+			out[s].writeInt(TRIAL);
+			out[s].writeLong(trialSeed);
+			out[s].writeInt(s == sourceShard ? sourceLocal : -1);
+		}
+
+		// ソースノードの受信（Protocolと同じく1通と数える）
+		receivedNodeNum = 1;
+		msgNum = 1;
+		hopNum = 0;
+
+		int waitNum;
+		do {
+			hopNum++;
+
+			// 各シャードで転送
+			for (int s = 0; s < shardNum; s++) {
+				out[s].writeInt(HOP);
+				out[s].flush();
+			}
+			Arrays.fill(routeNum, 0);
+			for (int s = 0; s < shardNum; s++) {
+				msgNum += in[s].readInt();
+				receivedNodeNum += in[s].readInt();
+				int num = in[s].readInt();
+				for (int i = 0; i < num; i++) {
+					int from = in[s].readInt();
+					int to = in[s].readInt();
+					addRoute(owner[to], from, to);
+				}
+			}
+
+			// 他のシャードへの送信を受信者のシャードへ振り分けて受信
+			for (int s = 0; s < shardNum; s++) {
+				out[s].writeInt(DELIVER);
+				out[s].writeInt(routeNum[s] / 2);
+				for (int i = 0; i < routeNum[s]; i++) {
+					out[s].writeInt(route[s][i]);
+				}
+				out[s].flush();
+			}
+			waitNum = 0;
+			for (int s = 0; s < shardNum; s++) {
+				receivedNodeNum += in[s].readInt();
+				waitNum += in[s].readInt();
+			}
+			// 待機中のノードがなければ試行終了
+		} while (waitNum > 0);
+	}
+
+	/**
+	 * 送信をシャードへ振り分ける
+	 * @param s 受信者のシャード
+	 * @param from 送信者
+	 * @param to 受信者
+	 */
+	private void addRoute(int s, int from, int to) {
+		if (routeNum[s] + 2 > route[s].length) {
+			route[s] = Arrays.copyOf(route[s], route[s].length * 2);
+		}
+		route[s][routeNum[s]++] = from;
+		route[s][routeNum[s]++] = to;
+	}
+
+	/**
+	 * シャードの数を返す
+	 * @return シャードの数
+	 */
+	public int getShardNum() {
+		return shardNum;
+	}
+
+	/**
+	 * 到達率（全ノードのうち，どれだけのノードがメッセージを受け取ったか）を返す
+	 * @return 到達率
+	 */
+	public float getReachability() {
+		return (float) receivedNodeNum / (float) csr.getNodeCount();
+	}
+
+	/**
+	 * 送信したメッセージ数を返す
+	 * @return メッセージ数
+	 */
+	public int getMsgNum() {
+		return msgNum;
+	}
+
+	/**
+	 * かかったホップ数（ターン数）を返す
+	 * @return ホップ数
+	 */
+	public int getHopNum() {
+		return hopNum;
+	}
+
+	/**
+	 * ShardWorkerを終了し，シャードのグラフを削除する
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		for (int s = 0; s < shardNum; s++) {
+			if (out != null && out[s] != null) {
+				try {
+					out[s].writeInt(QUIT);
+					out[s].flush();
+					sockets[s].close();
+				} catch (IOException e) {
+					// 既に終了したプロセスは無視する
+				}
+			}
+		}
+		for (Process worker : workers) {
+			try {
+				if (!worker.waitFor(10, TimeUnit.SECONDS)) {
+					worker.destroyForcibly();
+				}
+			} catch (InterruptedException e) {
+				worker.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (dir != null) {
+			for (int s = 0; s < shardNum; s++) {
+				Files.deleteIfExists(dir.resolve("shard-" + s + ".csr"));
+			}
+			Files.deleteIfExists(dir);
+		}
+	}
+}
@@ -4,28 +4,93 @@ public abstract class Simulate {
 	// シミュレータに関する変数
 	/**
 	 * ビュアーの表示の有無
+	 * システムプロパティ view=true で表示する（デモ用）
+	 * 指定がなければヘッドレスで実行し，ビュアーの表示，待機，ui.styleの設定を一切行わない
 	 */
-	protected final static boolean isView = true;
+	protected final static boolean isView = Boolean.getBoolean("view");
 	/**
 	 * グラフのID
 	 */
 	protected int graphId = 0;
 	/**
-	 * 試行回数のカウント
+	 * マスターシードの既定値
+	 * システムプロパティ seed で指定でき，指定がなければ起動時の時刻から決める
+	 * 同じ実行の中では全てのシミュレーションで共通なので，プロトコルごとの実行でも同じグラフになる
 	 */
-	protected int trialNum = 0;
+	private final static long DEFAULT_SEED = Long.getLong("seed", System.currentTimeMillis());
 	/**
-	 * Random Geometric Graph のジェネレータのクラス
+	 * マスターシード
+	 * グラフ，試行，各コンポーネントの乱数はこのシードからSeedSequenceで導出する
 	 */
-	protected RandomGeometricGraphGenerator generator;
+	protected long seed = DEFAULT_SEED;
 	/**
-	 * メッセージ配送のプロトコルのクラス
+	 * 並列に実行するスレッド数
+	 * ビュアーを表示する場合は1つずつ実行する
 	 */
-	protected Protocol protocol;
+	protected int threadNum = isView ? 1 : Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * 生成したグラフのキャッシュ
+	 * システムプロパティ graphCache でディレクトリを指定すると，ディスクにも保存して別の実行でも再利用する
+	 */
+	protected GraphCache graphCache = GraphCache.getDefault();
+
 	/**
-	 * TimeVaryingGraphのクラス
+	 * 外部のグラフのエッジリスト（EdgeListImporter）と，その座標のノードリスト
+	 * システムプロパティ graph, graphNodes で指定すると，グラフを生成せずに全てのセルでこのグラフを用いる
 	 */
-	protected TimeVaryingGraph tvg;
+	protected String graphFile = System.getProperty("graph");
+	protected String graphNodeFile = System.getProperty("graphNodes");
+
+	// プロトコルに関する変数
+	/**
+	 * プロトコル名もしくは，以下のプロトコルのID
+	 * Flooding: 0
+	 * FFG: 1
+	 * GMBC: 2
+	 * DOFlooding: 3（push/pullを切り替えるFlooding．結果はFloodingと同じ）
+	 * プロトコルの実体は試行のセルごとに生成する
+	 */
+	protected String protocolId;
+	/**
+	 * プロトコルでのFanout数
+	 */
+	protected int fanout;
+	/**
+	 * プロトコル名
+	 */
+	protected String protocolName = "";
+
+	/**
+	 * グラフの変化で，変化する要素を幾何分布の間隔で飛ばしながら選ぶか
+	 * システムプロパティ skipSampling=true で有効にする（変化率が低いほど速い）
+	 */
+	protected boolean isSkipSampling = Boolean.getBoolean("skipSampling");
+
+	/**
+	 * 同じグラフでの試行を，ビット並列でまとめて実行するか（BitParallelTrials）
+	 * システムプロパティ bitParallel=true で有効にする（FloodingとFFGのみ，ヘッドレスのみ）
+	 * 1試行ごとの結果は逐次の実行と一致しないが，結果の分布は同じになる
+	 */
+	protected boolean isBitParallel = Boolean.getBoolean("bitParallel");
+
+	/**
+	 * 逐次停止（SequentialStopping）での信頼区間の半幅の上限（平均に対する割合）
+	 * システムプロパティ ciWidth で指定する．指定がなければ停止せず，各ドライバの TRIALS * GRAPH_TRIALS 回を実行する
+	 */
+	protected double ciWidth = Double.parseDouble(System.getProperty("ciWidth", "0"));
+	/**
+	 * 逐次停止でのパラメータごとの最小，最大の試行数
+	 * システムプロパティ minTrials, maxTrials で指定する（maxTrialsの指定がなければ TRIALS * GRAPH_TRIALS）
+	 */
+	protected int minTrials = Integer.getInteger("minTrials", 0);
+	protected int maxTrials = Integer.getInteger("maxTrials", 0);
+
+	/**
+	 * 非同期の実行（EventDrivenSimulation）でのリンクの遅延の分布
+	 * システムプロパティ delay で指定する（LinkDelay.parseの形式．dist:exp:1.0 のようにエッジの長さに比例させられる．既定値は平均1の指数分布）
+	 */
+	protected String delaySpec = System.getProperty("delay", "exp:1.0");
 
 	/**
 	 * エリアの分割数
@@ -44,9 +109,29 @@ public abstract class Simulate {
 	 */
 	protected final static String PATH = "result/";
 	/**
-	 * 外部ファイルに出力するWriterクラス
+	 * 外部ファイルの出力形式
+	 * システムプロパティ format で指定できる（csv または binary）
+	 */
+	protected ResultSink.Format format = ResultSink.Format.valueOf(System.getProperty("format", "csv").toUpperCase());
+	/**
+	 * 外部ファイルをgzipで圧縮するか
+	 * システムプロパティ gzip=true で圧縮する
+	 */
+	protected boolean isGzip = Boolean.getBoolean("gzip");
+	/**
+	 * 1試行ごとの結果を出力するか
+	 * システムプロパティ raw=false で出力せず，パラメータごとの要約だけを出力する（試行数によらずメモリは一定）
 	 */
-	protected ResultWriter writer;
+	protected boolean isRaw = Boolean.parseBoolean(System.getProperty("raw", "true"));
+	/**
+	 * パラメータごとの要約（CellSummary）を出力するか
+	 * システムプロパティ summary=false で出力しない
+	 */
+	protected boolean isSummary = Boolean.parseBoolean(System.getProperty("summary", "true"));
+	/**
+	 * 要約する列（ドライバの結果にない列は飛ばす）
+	 */
+	protected final static String[] SUMMARY_COLUMNS = {"reachability", "msgNum", "hopNum", "aveChangeEdgeNum"};
 
 	/**
 	 * シミュレーション
@@ -55,6 +140,86 @@ public abstract class Simulate {
 	 */
 	abstract public void run() throws IOException, InterruptedException;
 
+	/**
+	 * 結果の出力先を生成する
+	 * 外部ファイルに出力しない場合も，コンソールへの進捗の表示に利用する
+	 * @param name 出力先のファイル名（拡張子なし）
+	 * @param schema 結果の列の定義
+	 * @param total 全試行数
+	 * @return 結果の出力先
+	 * @throws IOException
+	 */
+	protected ResultSink openSink(String name, ResultSchema schema, int total) throws IOException {
+		return new ResultSink(isWrite ? PATH + name : null, format, isGzip, protocolName, schema, total);
+	}
+
+	/**
+	 * パラメータごとの試行数を決める逐次停止を生成する
+	 * 到達率とメッセージ数の信頼区間で停止する
+	 * @param schema 結果の列の定義
+	 * @param graphTrials 1つのグラフでの試行回数
+	 * @param graphs パラメータごとのグラフの数（最大の試行数の指定がない場合）
+	 * @return 逐次停止
+	 */
+	protected SequentialStopping createStopping(ResultSchema schema, int graphTrials, int graphs) {
+		SequentialStopping stopping = new SequentialStopping(schema, graphTrials, graphs, threadNum, "reachability", "msgNum");
+		stopping.setStopping(ciWidth, minTrials, maxTrials);
+		return stopping;
+	}
+
+	/**
+	 * 逐次停止で全てのパラメータを実行し，結果を出力する
+	 * 1試行ごとの結果は name に，パラメータごとの要約は name_summary に出力する（isRaw, isSummary）
+	 * 要約はパラメータが停止するたびにコンソールにも表示する
+	 * @param stopping パラメータを追加した逐次停止
+	 * @param scheduler グラフを実行するスケジューラ
+	 * @param name 出力先のファイル名（拡張子なし）
+	 * @param schema 結果の列の定義
+	 * @param key パラメータの列名
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	protected void runStopping(SequentialStopping stopping, TrialScheduler scheduler, String name,
+			ResultSchema schema, String key) throws IOException, InterruptedException {
+		// 結果はバックグラウンドで書き出し，コンソールには進捗だけを表示
+		ResultSink sink = isRaw ? openSink(name, schema, stopping.getMaxTrials()) : null;
+		ResultSink summarySink = null;
+		if (isSummary) {
+			CellSummary summary = new CellSummary(schema, key, SUMMARY_COLUMNS);
+			summarySink = openSink(name + "_summary", summary.getSchema(), stopping.getParameterNum());
+			summarySink.setProgress(false);
+			final ResultSink out = summarySink;
+			System.out.println(summary.getSchema().header());
+			stopping.setSummary(summary, record -> {
+				System.out.println(record.toCsv());
+				out.accept(record);
+			});
+		}
+		stopping.run(scheduler, sink != null ? sink::accept : null);
+		scheduler.shutdown();
+		if (sink != null) {
+			sink.close();
+		}
+		if (summarySink != null) {
+			summarySink.close();
+		}
+	}
+
+	/**
+	 * セルで用いるグラフを取得する
+	 * 外部のグラフを指定していればそれを，なければグラフのシードから生成したグラフ（キャッシュを利用）を返す
+	 * @param generator ジェネレータ
+	 * @param graphSeed グラフのシード
+	 * @return グラフ
+	 * @throws IOException
+	 */
+	protected CsrGraph loadGraph(SpatialGridGraphGenerator generator, long graphSeed) throws IOException {
+		if (graphFile != null) {
+			return EdgeListImporter.load(graphFile, graphNodeFile);
+		}
+		return graphCache.load(generator, graphSeed);
+	}
+
 	/**
 	 * プロトコルIDからプロトコルの実態を返す
 	 * @param id プロトコルID
@@ -69,6 +234,8 @@ public abstract class Simulate {
 			protocol = new FixedFanoutGossip(fanout);
 		} else if (id.equals("GMBC") || id.equals("2")) {
 			protocol = new GossipForMBC(fanout, updateRate);
+		} else if (id.equals("DOFlooding") || id.equals("3")) {
+			protocol = new DirectionOptimizingFlooding();
 		} else {
 			System.out.println("未実装のプロトコル");
 			protocol = null;
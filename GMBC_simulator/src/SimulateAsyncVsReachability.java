@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * グラフの変化率と到達率，配送時間のシミュレーション（非同期の実行）
+ * EventDrivenSimulationで，リンクごとに遅延を引いてプロトコルを非同期に実行する<br>
+ * グラフの変化はTimeVaryingGraph（エッジの切断）かChurnGraph（ノードの離脱）を選び，
+ * 同期の実行の1hopと同じ間隔（時刻1ごと）の事象として実行する<br>
+ * 遅延の分布はシステムプロパティ delay で指定する（ヘッドレスのみ．dist:分布 ならエッジの長さに比例させる）
+ */
+public class SimulateAsyncVsReachability extends Simulate {
+	// グラフに関する定数
+	/**
+	 * ノードが接続する半径距離（閾値）
+	 */
+	private final static float RADIUS = 10.0f;
+	/**
+	 * グラフのx軸方向の範囲
+	 */
+	private final static float X_RANGE = 150;
+	/**
+	 * グラフのy軸方向の範囲
+	 */
+	private final static float Y_RANGE = 150;
+
+	// プロトコルに関する定数
+	/**
+	 * MBCの更新頻度
+	 */
+	private final static float UPDATE_RATE = 1.0f;
+
+	// グラフの変化に関する定数
+	/**
+	 * 変化率の開始
+	 */
+	private final static float RATE_START = 0.0f;
+	/**
+	 * 変化率の終了
+	 */
+	private final static float RATE_FINISH = 0.5f;
+	/**
+	 * 変化率の刻み
+	 */
+	private final static float RATE_DELTA = 0.1f;
+
+	/**
+	 * グラフの変化の間隔
+	 */
+	private final static double INTERVAL = 1.0;
+
+	// シミュレーションに関する定数
+	/**
+	 * 試行回数
+	 * 何度グラフを初期化して試行するか
+	 * TRIALS * GRAPH_TRIALS が試行回数になる
+	 */
+	private final static int TRIALS = 10;
+
+	/**
+	 * グラフに対する試行回数
+	 * 1つのグラフに対して何度試行するか
+	 * TRIALS * GRAPH_TRIALS が試行回数になる
+	 */
+	private final static int GRAPH_TRIALS = 10;
+
+	/**
+	 * 結果の列の定義
+	 * 配送時間は受信したノードの受信時刻のパーセンタイル
+	 */
+	private final static ResultSchema SCHEMA = new ResultSchema()
+			.addInt("id").addInt("nodeNum").addFloat("rate").addFloat("reachability")
+			.addInt("msgNum").addInt("lostNum").addInt("hopNum")
+			.addFloat("delivery50").addFloat("delivery90").addFloat("delivery99").addFloat("finishTime")
+			.addInt("maxInFlight").addLong("graphSeed").addLong("trialSeed");
+
+	/**
+	 * ChurnGraphでノードを離脱させるか（falseならTimeVaryingGraphでエッジを切断）
+	 */
+	private boolean isChurn;
+
+	public SimulateAsyncVsReachability(String protocolId, int fanout) {
+		this(protocolId, fanout, false);
+	}
+
+	public SimulateAsyncVsReachability(String protocolId, int fanout, boolean isChurn) {
+		// プロトコルの設定
+		this.protocolId = protocolId;
+		this.fanout = fanout;
+		this.isChurn = isChurn;
+		protocolName = getProtocol(protocolId, fanout, UPDATE_RATE).toString() + "_async";
+	}
+
+	public void run() throws IOException, InterruptedException {
+		// プロトコルの説明などを表示
+		printExplain();
+
+		// 変化率とグラフの組ごとに並列でシミュレーションを実行
+		// 変化率ごとの試行数は信頼区間で決める（ciWidthの指定がなければ TRIALS * GRAPH_TRIALS 回）
+		TrialScheduler scheduler = new TrialScheduler(threadNum);
+		SequentialStopping stopping = createStopping(SCHEMA, GRAPH_TRIALS, TRIALS);
+		for(float rate = RATE_START; rate <= RATE_FINISH; rate += RATE_DELTA) {
+			final float cellRate = rate;
+			stopping.add(graphId, graphIndex -> simulate(cellRate, graphIndex));
+			graphId += stopping.getMaxGraphs();
+		}
+		// 1試行ごとの結果と，変化率ごとの要約を出力
+		runStopping(stopping, scheduler, protocolName, SCHEMA, "rate");
+	}
+
+	/**
+	 * 1つのグラフでシミュレーションを実行
+	 * ジェネレータ，プロトコル，グラフの変化はこのセルの中だけで利用する
+	 * @param rate 変化率
+	 * @param graphIndex グラフのID
+	 * @return 試行の結果
+	 * @throws IOException
+	 */
+	private List<TrialRecord> simulate(float rate, int graphIndex) throws IOException {
+		SpatialGridGraphGenerator generator = new SpatialGridGraphGenerator(RADIUS, X_RANGE, Y_RANGE);
+		Protocol protocol = getProtocol(protocolId, fanout, UPDATE_RATE);
+		List<TrialRecord> rows = new ArrayList<TrialRecord>();
+
+		// グラフを更新
+		long graphSeed = SeedSequence.derive(seed, graphIndex);
+		// 同じシードのグラフは生成せずにキャッシュから読み込む（外部のグラフを指定していればそれを使う）
+		CsrGraph csr = loadGraph(generator, graphSeed);
+		EventDrivenSimulation sim = new EventDrivenSimulation(protocol, csr);
+		sim.setDelay(LinkDelay.parse(delaySpec, csr, RADIUS));
+
+		// グラフの変化の設定（GMBCは変化を購読してMBCを差分更新する）
+		TimeVaryingGraph tvg = null;
+		ChurnGraph cg = null;
+		if (isChurn) {
+			cg = new ChurnGraph();
+			cg.setChurnRate(rate);
+			cg.setSkipSampling(isSkipSampling);
+			cg.setGraph(csr);
+			if (protocol instanceof GossipForMBC) {
+				((GossipForMBC) protocol).subscribe(cg);
+			}
+			sim.setEdgeMask(cg.getEdgeMask());
+			sim.setDynamics(cg::run, INTERVAL);
+		} else {
+			tvg = new TimeVaryingGraph();
+			tvg.setVaryingRate(rate);
+			tvg.setSkipSampling(isSkipSampling);
+			tvg.setGraph(csr);
+			if (protocol instanceof GossipForMBC) {
+				((GossipForMBC) protocol).subscribe(tvg);
+			}
+			sim.setEdgeMask(tvg.getEdgeMask());
+			sim.setDynamics(tvg::run, INTERVAL);
+		}
+
+		// 同じグラフでの試行のループ
+		for(int j = 0; j < GRAPH_TRIALS; j++) {
+			int trialNum = graphIndex * GRAPH_TRIALS + j + 1;
+			long trialSeed = SeedSequence.derive(graphSeed, j);
+			protocol.setRandom(SeedSequence.random(trialSeed, SeedSequence.PROTOCOL));
+			sim.setRandom(SeedSequence.random(trialSeed, SeedSequence.DELAY));
+
+			// 各種初期化
+			if (isChurn) {
+				cg.setRandom(SeedSequence.random(trialSeed, SeedSequence.DYNAMICS));
+				cg.init();
+			} else {
+				tvg.setRandom(SeedSequence.random(trialSeed, SeedSequence.DYNAMICS));
+				tvg.init();
+			}
+			sim.init();
+
+			// シミュレーション実行
+			sim.run();
+
+			// 結果の出力
+			rows.add(SCHEMA.record(trialNum, csr.getNodeCount(), rate, sim.getReachability(),
+					sim.getMsgNum(), sim.getLostNum(), sim.getHopNum(),
+					(float) sim.getDeliveryTime(0.5), (float) sim.getDeliveryTime(0.9),
+					(float) sim.getDeliveryTime(0.99), (float) sim.getFinishTime(),
+					sim.getMaxInFlight(), graphSeed, trialSeed));
+		}
+		return rows;
+	}
+
+	/**
+	 * プロトコルの説明などを表示
+	 */
+	private void printExplain() {
+		System.out.println(protocolName + " (" + (isChurn ? "churn" : "varying") + ", delay=" + delaySpec + ")");
+		System.out.println(SCHEMA.header());
+	}
+}
@@ -1,4 +1,7 @@
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.graphstream.graph.Graph;
@@ -41,6 +44,13 @@ public class SimulateBiasedVaryingVsReachability extends Simulate {
 	 */
 	private final static float BIAS_VARYING_DELTA = 0.2f;
 
+	/**
+	 * エリアごとの変化の確率（AreaPartitionのエリアの番号の順．指定しなければnull）
+	 * システムプロパティ areaRates=r0,r1,... で SEPARATE_X * SEPARATE_Y 個を指定すると，
+	 * 市松模様の偏りの代わりにこの表で変化させ，1つのパラメータ（bias列はNaN）だけを実行する
+	 */
+	private float[] areaRates;
+
 	// シミュレーションに関する定数
 	/**
 	 * 試行回数
@@ -56,75 +66,234 @@ public class SimulateBiasedVaryingVsReachability extends Simulate {
 	 */
 	private final static int GRAPH_TRIALS = 10;
 
+	/**
+	 * 結果の列の定義
+	 */
+	private final static ResultSchema SCHEMA = new ResultSchema()
+			.addInt("id").addInt("nodeNum").addFloat("varyingRate").addFloat("bias").addFloat("reachability")
+			.addInt("msgNum").addInt("hopNum").addLong("graphSeed").addLong("trialSeed");
+
 	public SimulateBiasedVaryingVsReachability(String protocolId, int fanout) {
 		// プロトコルの設定
-		protocol = getProtocol(protocolId, fanout, UPDATE_RATE);
+		this.protocolId = protocolId;
+		this.fanout = fanout;
+		protocolName = getProtocol(protocolId, fanout, UPDATE_RATE).toString();
+		areaRates = parseAreaRates(System.getProperty("areaRates"));
 	}
 
-	public void run() throws IOException, InterruptedException {
-		// シミュレーションの設定
-		// グラフジェネレータの設定
-		generator = new RandomGeometricGraphGenerator(RADIUS, X_RANGE, Y_RANGE);
-		// Time-Varying Graphの設定
-		tvg = new TimeVaryingGraph();
-		// writer
-		if(isWrite) writer = new ResultWriter(PATH + protocol.toString() + ".csv");
+	/**
+	 * エリアごとの変化の確率を読み取る
+	 * @param spec カンマ区切りの確率（nullなら指定なし）
+	 * @return エリアごとの変化の確率（指定がなければnull）
+	 */
+	private float[] parseAreaRates(String spec) {
+		if (spec == null) {
+			return null;
+		}
+		String[] token = spec.split(",");
+		if (token.length != SEPARATE_X * SEPARATE_Y) {
+			throw new IllegalArgumentException("areaRatesの数がエリアの数（" + SEPARATE_X + "x" + SEPARATE_Y + "）と一致しない: " + spec);
+		}
+		float[] rates = new float[token.length];
+		for (int a = 0; a < rates.length; a++) {
+			try {
+				rates[a] = Float.parseFloat(token[a].trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("areaRatesの形式が正しくない: " + spec, e);
+			}
+			if (!(rates[a] >= 0 && rates[a] <= 1)) {
+				throw new IllegalArgumentException("areaRatesの確率は0から1で指定する: " + spec);
+			}
+		}
+		return rates;
+	}
 
+	public void run() throws IOException, InterruptedException {
 		// プロトコルの説明などを表示
 		printExplain();
 
-		// 変化率を変化させてシミュレーションを実行
-		for(float varying = BIAS_VARYING_START; varying <= BIAS_VARYING_FINISH; varying += BIAS_VARYING_DELTA) {
-			simulate(varying);
+		// 偏りとグラフの組ごとに並列でシミュレーションを実行
+		// 偏りごとの試行数は信頼区間で決める（ciWidthの指定がなければ TRIALS * GRAPH_TRIALS 回）
+		TrialScheduler scheduler = new TrialScheduler(threadNum);
+		SequentialStopping stopping = createStopping(SCHEMA, GRAPH_TRIALS, TRIALS);
+		if (areaRates != null) {
+			// エリアごとの確率を指定した場合は，その表での1つのパラメータだけを実行
+			stopping.add(graphId, graphIndex -> simulate(Float.NaN, graphIndex));
+			graphId += stopping.getMaxGraphs();
+		} else {
+			for(float varying = BIAS_VARYING_START; varying <= BIAS_VARYING_FINISH; varying += BIAS_VARYING_DELTA) {
+				final float bias = varying;
+				stopping.add(graphId, graphIndex -> simulate(bias, graphIndex));
+				graphId += stopping.getMaxGraphs();
+			}
 		}
-
-		if(isWrite) writer.close();
+		// 1試行ごとの結果と，偏りごとの要約を出力
+		runStopping(stopping, scheduler, areaRates != null ? protocolName + "_area" : protocolName, SCHEMA, "bias");
 	}
 
 	/**
-	 * シミュレーションを実行
-	 * @param varying
+	 * 1つのグラフでシミュレーションを実行
+	 * ジェネレータ，プロトコル，TimeVaryingGraphはこのセルの中だけで利用する
+	 * @param bias 偏りの強さ（エリアごとの確率を指定した場合はNaN）
+	 * @param graphIndex グラフのID
+	 * @return 試行の結果
 	 * @throws InterruptedException
+	 * @throws IOException
 	 */
-	private void simulate(float bias) throws InterruptedException {
+	private List<TrialRecord> simulate(float bias, int graphIndex) throws InterruptedException, IOException {
+		SpatialGridGraphGenerator generator = new SpatialGridGraphGenerator(RADIUS, X_RANGE, Y_RANGE);
+		Protocol protocol = getProtocol(protocolId, fanout, UPDATE_RATE);
+		protocol.setView(isView);
+		TimeVaryingGraph tvg = new TimeVaryingGraph();
+		List<TrialRecord> rows = new ArrayList<TrialRecord>();
+
 		// 変化率の設定
 		tvg.setVaryingRate(VARYING_RATE);
+		tvg.setSkipSampling(isSkipSampling);
+		// GMBCはグラフの変化を購読してMBCを差分更新する
+		if (protocol instanceof GossipForMBC) {
+			((GossipForMBC) protocol).subscribe(tvg);
+		}
+
+		Viewer viewer = null;
+		// グラフを更新
+		long graphSeed = SeedSequence.derive(seed, graphIndex);
+		// 同じシードのグラフは生成せずにキャッシュから読み込む（外部のグラフを指定していればそれを使う）
+		CsrGraph csr = loadGraph(generator, graphSeed);
 
-		Viewer viewer;
-		// グラフを初期化する試行のループ
-		for(int i = 0; i < TRIALS; i++) {
-			// グラフを更新
-			Graph graph = generator.generate(graphId++ + "");
+		// ビット並列に対応するプロトコルは，同じグラフでの試行をまとめて実行する
+		if (isBitParallel && !isView) {
+			BitParallelTrials trials = BitParallelTrials.create(protocol, csr);
+			if (trials != null) {
+				return simulateInLanes(trials, csr, bias, graphIndex, graphSeed);
+			}
+		}
+		Graph graph = null;
+		if (isView) {
+			graph = SpatialGridGraphGenerator.toGraph(csr, graphIndex + "");
 			protocol.setGraph(graph);
 			tvg.setGraph(graph, X_RANGE, Y_RANGE, SEPARATE_X, SEPARATE_Y);
-			tvg.setBias(bias);
+		} else {
+			// ヘッドレスではCSR形式のグラフのまま，エッジの切断をマスクで表して実行する
+			protocol.setGraph(csr);
+			tvg.setGraph(csr, X_RANGE, Y_RANGE, SEPARATE_X, SEPARATE_Y);
+			protocol.setEdgeMask(tvg.getEdgeMask());
+		}
+		setRates(tvg, bias);
 
-			// 同じグラフでの試行のループ
-			for(int j = 0; j < GRAPH_TRIALS; j++) {
-				trialNum++;
+		// 同じグラフでの試行のループ
+		for(int j = 0; j < GRAPH_TRIALS; j++) {
+			int trialNum = graphIndex * GRAPH_TRIALS + j + 1;
+			long trialSeed = SeedSequence.derive(graphSeed, j);
+			tvg.setRandom(SeedSequence.random(trialSeed, SeedSequence.DYNAMICS));
+			protocol.setRandom(SeedSequence.random(trialSeed, SeedSequence.PROTOCOL));
 
-				// 各種初期化
-				tvg.init();
-				protocol.init();
+			// 各種初期化
+			tvg.init();
+			protocol.init();
 
-				// display開始
-				if (isView) viewer = graph.display(false);
+			// display開始
+			if (isView) viewer = graph.display(false);
 
-				// シミュレーション実行
-				do {
-					if (isView) TimeUnit.SECONDS.sleep(1);
-					tvg.run();
-				} while(!protocol.run());
+			// シミュレーション実行
+			do {
 				if (isView) TimeUnit.SECONDS.sleep(1);
+				tvg.run();
+			} while(!protocol.run());
+			if (isView) TimeUnit.SECONDS.sleep(1);
 
-				// display終了
-				if (isView) viewer.close();
+			// display終了
+			if (isView) viewer.close();
 
-				// 結果の出力
-				printResult(trialNum, graph.getNodeCount(), VARYING_RATE, bias, protocol.getReachability(),
-						protocol.getMsgNum(), protocol.getHopNum());
+			// 結果の出力
+			rows.add(formatResult(trialNum, csr.getNodeCount(), getVaryingRate(), bias, protocol.getReachability(),
+					protocol.getMsgNum(), protocol.getHopNum(), graphSeed, trialSeed));
+		}
+		return rows;
+	}
+
+	/**
+	 * 1つのグラフでの試行を，ビット並列でまとめて実行
+	 * 試行ごとにTimeVaryingGraphを用意し，切断中のエッジはレーンのビットで共有する
+	 * 各試行のシードはsimulateと同じ導出による
+	 * @param trials ビット並列の実行
+	 * @param csr 対象となるグラフ
+	 * @param bias 偏りの強さ
+	 * @param graphIndex グラフのID
+	 * @param graphSeed グラフのシード
+	 * @return 試行の結果
+	 */
+	private List<TrialRecord> simulateInLanes(BitParallelTrials trials, CsrGraph csr, float bias, int graphIndex, long graphSeed) {
+		List<TrialRecord> rows = new ArrayList<TrialRecord>();
+
+		// レーンごとのTimeVaryingGraph
+		TimeVaryingGraph[] tvgs = new TimeVaryingGraph[Math.min(BitParallelTrials.LANES, GRAPH_TRIALS)];
+		for (int l = 0; l < tvgs.length; l++) {
+			tvgs[l] = new TimeVaryingGraph();
+			tvgs[l].setVaryingRate(VARYING_RATE);
+			tvgs[l].setSkipSampling(isSkipSampling);
+			tvgs[l].setGraph(csr, X_RANGE, Y_RANGE, SEPARATE_X, SEPARATE_Y);
+			setRates(tvgs[l], bias);
+			tvgs[l].setLaneMask(trials.getEdgeMask(), l);
+		}
+
+		// LANES個ずつ試行をまとめて実行
+		for (int first = 0; first < GRAPH_TRIALS; first += tvgs.length) {
+			int laneNum = Math.min(tvgs.length, GRAPH_TRIALS - first);
+			long[] trialSeeds = new long[laneNum];
+			for (int l = 0; l < laneNum; l++) {
+				trialSeeds[l] = SeedSequence.derive(graphSeed, first + l);
+				tvgs[l].setRandom(SeedSequence.random(trialSeeds[l], SeedSequence.DYNAMICS));
+				trials.setRandom(l, SeedSequence.random(trialSeeds[l], SeedSequence.PROTOCOL));
+				tvgs[l].init();
+			}
+			trials.init(laneNum);
+
+			// 実行中のレーンのグラフだけを変化させる
+			do {
+				for (long lanes = trials.getRunning(); lanes != 0; lanes &= lanes - 1) {
+					tvgs[Long.numberOfTrailingZeros(lanes)].run();
+				}
+			} while (!trials.run());
+
+			// 結果の出力
+			for (int l = 0; l < laneNum; l++) {
+				int trialNum = graphIndex * GRAPH_TRIALS + first + l + 1;
+				rows.add(formatResult(trialNum, csr.getNodeCount(), getVaryingRate(), bias, trials.getReachability(l),
+						trials.getMsgNum(l), trials.getHopNum(l), graphSeed, trialSeeds[l]));
 			}
 		}
+		return rows;
+	}
+
+	/**
+	 * エリアごとの変化の確率を設定する
+	 * エリアごとの確率を指定していればその表を，なければ市松模様の偏りを用いる
+	 * @param tvg グラフの変化（グラフを設定した後）
+	 * @param bias 偏りの強さ
+	 */
+	private void setRates(TimeVaryingGraph tvg, float bias) {
+		if (areaRates != null) {
+			tvg.setAreaRates(areaRates);
+		} else {
+			tvg.setBias(bias);
+		}
+	}
+
+	/**
+	 * 結果に出力する変化率を取得する
+	 * エリアごとの確率を指定した場合は，エリアの確率の平均
+	 * @return 変化率
+	 */
+	private float getVaryingRate() {
+		if (areaRates == null) {
+			return VARYING_RATE;
+		}
+		double sum = 0;
+		for (float rate : areaRates) {
+			sum += rate;
+		}
+		return (float) (sum / areaRates.length);
 	}
 
 	/**
@@ -132,29 +301,26 @@ public class SimulateBiasedVaryingVsReachability extends Simulate {
 	 * @param protocolName プロトコル名
 	 */
 	private void printExplain() {
-		String query = "id,nodeNum,varyingRate,bias,reachability,msgNum,hopNum";
-		if(isWrite) {
-			writer.println(protocol.toString());
-			writer.println(query);
+		System.out.println(protocolName);
+		if (areaRates != null) {
+			System.out.println("areaRates = " + Arrays.toString(areaRates));
 		}
-		System.out.println(protocol.toString());
-		System.out.println(query);
+		System.out.println(SCHEMA.header());
 	}
 
 	/**
-	 * 結果の表示
+	 * 試行の結果を生成
 	 * @param trial 試行回数（何度目か）
 	 * @param node ノード数
 	 * @param varying グラフのエッジの変化率
 	 * @param reach メッセージが到達した割合
 	 * @param msg メッセージ数
 	 * @param hop ホップ数
+	 * @param graphSeed グラフのシード
+	 * @param trialSeed 試行のシード
+	 * @return 試行の結果
 	 */
-	private void printResult(int trial, int node, float varying, float bias, float reach, int msg, int hop) {
-		String str = trial + "," + node + "," + varying + "," + bias + "," + reach + "," + msg + "," + hop;
-		if(isWrite) {
-			writer.println(str);
-		}
-		System.out.println(str);
+	private TrialRecord formatResult(int trial, int node, float varying, float bias, float reach, int msg, int hop, long graphSeed, long trialSeed) {
+		return SCHEMA.record(trial, node, varying, bias, reach, msg, hop, graphSeed, trialSeed);
 	}
 }
\ No newline at end of file
@@ -1,7 +1,8 @@
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import org.graphstream.graph.Edge;
 import org.graphstream.graph.Graph;
 import org.graphstream.ui.view.Viewer;
 
@@ -26,10 +27,6 @@ public class SimulateChurnVsReachability extends Simulate {
 	 */
 	private final static float UPDATE_RATE = 1.0f;
 	// Churn Graphに関する定数
-	/**
-	 * CuhrnGraph
-	 */
-	private ChurnGraph cg;
 	/**
 	 * 切断，再接続される確率の開始
 	 */
@@ -58,80 +55,109 @@ public class SimulateChurnVsReachability extends Simulate {
 	 */
 	private final static int GRAPH_TRIALS = 50;
 
+	/**
+	 * 結果の列の定義
+	 */
+	private final static ResultSchema SCHEMA = new ResultSchema()
+			.addInt("id").addInt("nodeNum").addFloat("ChurnRate").addFloat("reachability")
+			.addInt("msgNum").addInt("hopNum").addInt("aveChangeEdgeNum").addInt("edgeNum")
+			.addLong("graphSeed").addLong("trialSeed");
+
 	public SimulateChurnVsReachability(String protocolId, int fanout) {
 		// プロトコルの設定
-		protocol = getProtocol(protocolId, fanout, UPDATE_RATE);
+		this.protocolId = protocolId;
+		this.fanout = fanout;
+		protocolName = getProtocol(protocolId, fanout, UPDATE_RATE).toString();
 	}
 
 	public void run() throws IOException, InterruptedException {
-		// シミュレーションの設定
-		// グラフジェネレータの設定
-		generator = new RandomGeometricGraphGenerator(RADIUS, X_RANGE, Y_RANGE);
-		// churn Graphの設定
-		cg = new ChurnGraph();
-		// writer
-		if(isWrite) writer = new ResultWriter(PATH + protocol.toString() + ".csv");
-
 		// プロトコルの説明などを表示
 		printExplain();
 
-		// 変化率を変化させてシミュレーションを実行
+		// 変化率とグラフの組ごとに並列でシミュレーションを実行
+		// 変化率ごとの試行数は信頼区間で決める（ciWidthの指定がなければ TRIALS * GRAPH_TRIALS 回）
+		TrialScheduler scheduler = new TrialScheduler(threadNum);
+		SequentialStopping stopping = createStopping(SCHEMA, GRAPH_TRIALS, TRIALS);
 		for(float churn = CHURN_RATE_START; churn <= CHURN_RATE_FINISH; churn += CHURN_RATE_DELTA) {
-			simulate(churn);
+			final float churnRate = churn;
+			stopping.add(graphId, graphIndex -> simulate(churnRate, graphIndex));
+			graphId += stopping.getMaxGraphs();
 		}
-
-		if(isWrite) writer.close();
+		// 1試行ごとの結果と，離脱率ごとの要約を出力
+		runStopping(stopping, scheduler, protocolName, SCHEMA, "ChurnRate");
 	}
 
 	/**
-	 * シミュレーションを実行
-	 * @param varying
+	 * 1つのグラフでシミュレーションを実行
+	 * ジェネレータ，プロトコル，ChurnGraphはこのセルの中だけで利用する
+	 * @param churnRate 変化率
+	 * @param graphIndex グラフのID
+	 * @return 試行の結果
 	 * @throws InterruptedException
+	 * @throws IOException
 	 */
-	private void simulate(float churnRate) throws InterruptedException {
+	private List<TrialRecord> simulate(float churnRate, int graphIndex) throws InterruptedException, IOException {
+		SpatialGridGraphGenerator generator = new SpatialGridGraphGenerator(RADIUS, X_RANGE, Y_RANGE);
+		Protocol protocol = getProtocol(protocolId, fanout, UPDATE_RATE);
+		protocol.setView(isView);
+		ChurnGraph cg = new ChurnGraph();
+		List<TrialRecord> rows = new ArrayList<TrialRecord>();
+
 		// 変化率の設定
 		cg.setChurnRate(churnRate);
+		cg.setSkipSampling(isSkipSampling);
+		// GMBCはグラフの変化を購読してMBCを差分更新する
+		if (protocol instanceof GossipForMBC) {
+			((GossipForMBC) protocol).subscribe(cg);
+		}
 
-		Viewer viewer;
-		// グラフを初期化する試行のループ
-		for(int i = 0; i < TRIALS; i++) {
-			// グラフを更新
-			Graph graph = generator.generate(graphId++ + "");
+		Viewer viewer = null;
+		// グラフを更新
+		long graphSeed = SeedSequence.derive(seed, graphIndex);
+		// 同じシードのグラフは生成せずにキャッシュから読み込む（外部のグラフを指定していればそれを使う）
+		CsrGraph csr = loadGraph(generator, graphSeed);
+		Graph graph = null;
+		if (isView) {
+			graph = SpatialGridGraphGenerator.toGraph(csr, graphIndex + "");
 			protocol.setGraph(graph);
 			cg.setGraph(graph);
+		} else {
+			// ヘッドレスではCSR形式のグラフのまま，離脱中のノードのエッジをマスクで表して実行する
+			protocol.setGraph(csr);
+			cg.setGraph(csr);
+			protocol.setEdgeMask(cg.getEdgeMask());
+		}
 
-			// 同じグラフでの試行のループ
-			for(int j = 0; j < GRAPH_TRIALS; j++) {
-				trialNum++;
-
-				// 各種初期化
-				cg.init();
-				protocol.init();
+		// 同じグラフでの試行のループ
+		for(int j = 0; j < GRAPH_TRIALS; j++) {
+			int trialNum = graphIndex * GRAPH_TRIALS + j + 1;
+			long trialSeed = SeedSequence.derive(graphSeed, j);
+			cg.setRandom(SeedSequence.random(trialSeed, SeedSequence.DYNAMICS));
+			protocol.setRandom(SeedSequence.random(trialSeed, SeedSequence.PROTOCOL));
 
-				int cnt = 0;
-				for(Edge edge : graph.getEachEdge()) {
-					cnt++;
-				}
+			// 各種初期化
+			cg.init();
+			protocol.init();
 
-				// display開始
-				if (isView) viewer = graph.display(false);
+			// display開始
+			if (isView) viewer = graph.display(false);
 
-				// シミュレーション実行
-				int chengeEdgeNum = 0;
-				do {
-					if (isView) TimeUnit.SECONDS.sleep(1);
-					chengeEdgeNum += cg.run();
-				} while(!protocol.run());
+			// シミュレーション実行
+			int chengeEdgeNum = 0;
+			do {
 				if (isView) TimeUnit.SECONDS.sleep(1);
+				chengeEdgeNum += cg.run();
+			} while(!protocol.run());
+			if (isView) TimeUnit.SECONDS.sleep(1);
 
-				// display終了
-				if (isView) viewer.close();
+			// display終了
+			if (isView) viewer.close();
 
-				// 結果の出力
-				printResult(trialNum, cg.getNodeNum(), churnRate, protocol.getReachability(),
-						protocol.getMsgNum(), protocol.getHopNum(), chengeEdgeNum, cnt);
-			}
+			// 結果の出力
+			rows.add(formatResult(trialNum, cg.getNodeNum(), churnRate, protocol.getReachability(),
+					protocol.getMsgNum(), protocol.getHopNum(), chengeEdgeNum, csr.getEdgeCount(), graphSeed, trialSeed));
 		}
+		return rows;
 	}
 
 
@@ -140,30 +166,24 @@ public class SimulateChurnVsReachability extends Simulate {
 	 * @param protocolName プロトコル名
 	 */
 	private void printExplain() {
-		String query = "id,nodeNum,ChurnRate,reachability,msgNum,hopNum,aveChangeEdgeNum,edgeNum";
-		if(isWrite) {
-			writer.println(protocol.toString());
-			writer.println(query);
-		}
-		System.out.println(protocol.toString());
-		System.out.println(query);
+		System.out.println(protocolName);
+		System.out.println(SCHEMA.header());
 	}
 
 	/**
-	 * 結果の表示
+	 * 試行の結果を生成
 	 * @param trial 試行回数（何度目か）
 	 * @param node ノード数
 	 * @param churn グラフのエッジの変化率
 	 * @param reach メッセージが到達した割合
 	 * @param msg メッセージ数
 	 * @param hop ホップ数
+	 * @param graphSeed グラフのシード
+	 * @param trialSeed 試行のシード
+	 * @return 試行の結果
 	 */
-	private void printResult(int trial, int node, float churn, float reach, int msg, int hop, int ChangeEdgeNum, int edgeNum) {
-		String str = trial + "," + node + "," + churn + "," + reach + "," + msg + "," + hop + "," + (int)(ChangeEdgeNum/hop) + "," + edgeNum;
-		if(isWrite) {
-			writer.println(str);
-		}
-		System.out.println(str);
+	private TrialRecord formatResult(int trial, int node, float churn, float reach, int msg, int hop, int ChangeEdgeNum, int edgeNum, long graphSeed, long trialSeed) {
+		return SCHEMA.record(trial, node, churn, reach, msg, hop, (int)(ChangeEdgeNum/hop), edgeNum, graphSeed, trialSeed);
 	}
 
 }
@@ -0,0 +1,97 @@
+import java.io.IOException;
+
+/**
+ * 静的なグラフでの到達率のシミュレーション（シャードに分けた複数プロセスでの実行）
+ * グラフをSEPARATE_X * SEPARATE_Yのエリアに分け，エリアごとのShardWorkerのプロセスで実行する（ShardedSimulation）<br>
+ * 1つのJVMに収まらない大きさのグラフ（外部のグラフ -Dgraph など）を想定し，グラフごとに順に実行する
+ */
+public class SimulateShardedVsReachability extends Simulate {
+	// グラフに関する定数
+	/**
+	 * ノードが接続する半径距離（閾値）
+	 */
+	private final static float RADIUS = 10.0f;
+	/**
+	 * グラフのx軸方向の範囲
+	 */
+	private final static float X_RANGE = 150;
+	/**
+	 * グラフのy軸方向の範囲
+	 */
+	private final static float Y_RANGE = 150;
+
+	// プロトコルに関する定数
+	/**
+	 * MBCの更新頻度
+	 */
+	private final static float UPDATE_RATE = 1.0f;
+
+	// シミュレーションに関する定数
+	/**
+	 * 試行回数
+	 * 何度グラフを初期化して試行するか
+	 * TRIALS * GRAPH_TRIALS が試行回数になる
+	 */
+	private final static int TRIALS = 10;
+
+	/**
+	 * グラフに対する試行回数
+	 * 1つのグラフに対して何度試行するか
+	 * TRIALS * GRAPH_TRIALS が試行回数になる
+	 */
+	private final static int GRAPH_TRIALS = 10;
+
+	/**
+	 * 結果の列の定義
+	 */
+	private final static ResultSchema SCHEMA = new ResultSchema()
+			.addInt("id").addInt("nodeNum").addInt("shardNum").addFloat("reachability")
+			.addInt("msgNum").addInt("hopNum").addLong("graphSeed").addLong("trialSeed");
+
+	public SimulateShardedVsReachability(String protocolId, int fanout) {
+		// プロトコルの設定
+		this.protocolId = protocolId;
+		this.fanout = fanout;
+		protocolName = getProtocol(protocolId, fanout, UPDATE_RATE).toString() + "_sharded";
+	}
+
+	public void run() throws IOException, InterruptedException {
+		// プロトコルの説明などを表示
+		System.out.println(protocolName + " (" + SEPARATE_X + "x" + SEPARATE_Y + " areas)");
+		System.out.println(SCHEMA.header());
+
+		// 各グラフのシャードがプロセスを使うので，グラフは1つずつ実行する
+		ResultSink sink = openSink(protocolName, SCHEMA, TRIALS * GRAPH_TRIALS);
+		for (int i = 0; i < TRIALS; i++) {
+			int graphIndex = graphId++;
+			SpatialGridGraphGenerator generator = new SpatialGridGraphGenerator(RADIUS, X_RANGE, Y_RANGE);
+			long graphSeed = SeedSequence.derive(seed, graphIndex);
+			// 同じシードのグラフは生成せずにキャッシュから読み込む（外部のグラフを指定していればそれを使う）
+			CsrGraph csr = loadGraph(generator, graphSeed);
+
+			// エリアの範囲はノードの座標から決める（外部のグラフの座標の範囲は分からないため）
+			float rangeX = 1;
+			float rangeY = 1;
+			for (int v = 0; v < csr.getNodeCount(); v++) {
+				rangeX = Math.max(rangeX, csr.getX(v) + 1);
+				rangeY = Math.max(rangeY, csr.getY(v) + 1);
+			}
+			try (ShardedSimulation sim = new ShardedSimulation(csr,
+					new AreaPartition(rangeX, rangeY, SEPARATE_X, SEPARATE_Y))) {
+				sim.start(protocolId, fanout, UPDATE_RATE);
+
+				// 同じグラフでの試行のループ
+				for (int j = 0; j < GRAPH_TRIALS; j++) {
+					int trialNum = graphIndex * GRAPH_TRIALS + j + 1;
+					long trialSeed = SeedSequence.derive(graphSeed, j);
+					sim.run(trialSeed);
+
+					// 結果の出力
+					sink.accept(SCHEMA.record(trialNum, csr.getNodeCount(), sim.getShardNum(),
+							sim.getReachability(), sim.getMsgNum(), sim.getHopNum(), graphSeed, trialSeed));
+				}
+			}
+		}
+		sink.close();
+	}
+}
@@ -1,4 +1,6 @@
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.graphstream.graph.Graph;
@@ -20,21 +22,6 @@ public class SimulateUpdateMbcVsReachiability extends Simulate{
 	private final static float Y_RANGE = 150;
 
 	// プロトコルに関する定数
-	/**
-	 * プロトコル名もしくは，以下のプロトコルのID
-	 * Flooding: 0
-	 * FFG: 1
-	 * GMBC: 2
-	 */
-	private String protocolId;
-	/**
-	 * プロトコルでのFanout数
-	 */
-	private int fanout;
-	/**
-	 * プロトコル名
-	 */
-	private String protocolName = "";
 	/**
 	 * MBCの更新される確率の開始
 	 */
@@ -69,6 +56,13 @@ public class SimulateUpdateMbcVsReachiability extends Simulate{
 	 */
 	private final static int GRAPH_TRIALS = 10;
 
+	/**
+	 * 結果の列の定義
+	 */
+	private final static ResultSchema SCHEMA = new ResultSchema()
+			.addInt("id").addInt("nodeNum").addFloat("varyingRate").addFloat("updateRate").addFloat("reachability")
+			.addInt("msgNum").addInt("hopNum").addLong("graphSeed").addLong("trialSeed");
+
 	public SimulateUpdateMbcVsReachiability(String protocolId, int fanout) {
 		// プロトコルの設定
 		this.protocolId = protocolId;
@@ -77,69 +71,92 @@ public class SimulateUpdateMbcVsReachiability extends Simulate{
 	}
 
 	public void run() throws IOException, InterruptedException {
-		// シミュレーションの設定
-		// グラフジェネレータの設定
-		generator = new RandomGeometricGraphGenerator(RADIUS, X_RANGE, Y_RANGE);
-		// Time-Varying Graphの設定
-		tvg = new TimeVaryingGraph();
-		tvg.setVaryingRate(VARYING_RATE);
-		// writer
-		if(isWrite) writer = new ResultWriter(PATH + protocolName + "_uodateMBC" + ".csv");
-
 		// プロトコルの説明などを表示
 		printExplain();
 
-		// 変化率を変化させてシミュレーションを実行
+		// 更新頻度とグラフの組ごとに並列でシミュレーションを実行
+		// 更新頻度ごとの試行数は信頼区間で決める（ciWidthの指定がなければ TRIALS * GRAPH_TRIALS 回）
+		TrialScheduler scheduler = new TrialScheduler(threadNum);
+		SequentialStopping stopping = createStopping(SCHEMA, GRAPH_TRIALS, TRIALS);
 		for(float update = UPDATE_RATE_START; update <= UPDATE_RATE_FINISH; update += UPDATE_RATE_DELTA) {
-			simulate(update);
+			final float updateRate = update;
+			stopping.add(graphId, graphIndex -> simulate(updateRate, graphIndex));
+			graphId += stopping.getMaxGraphs();
 		}
-
-		if(isWrite) writer.close();
+		// 1試行ごとの結果と，更新頻度ごとの要約を出力
+		runStopping(stopping, scheduler, protocolName + "_uodateMBC", SCHEMA, "updateRate");
 	}
 
 	/**
-	 * シミュレーションを実行
-	 * @param varying
+	 * 1つのグラフでシミュレーションを実行
+	 * ジェネレータ，プロトコル，TimeVaryingGraphはこのセルの中だけで利用する
+	 * @param updateRate MBCの更新頻度
+	 * @param graphIndex グラフのID
+	 * @return 試行の結果
 	 * @throws InterruptedException
+	 * @throws IOException
 	 */
-	private void simulate(float updateRate) throws InterruptedException {
+	private List<TrialRecord> simulate(float updateRate, int graphIndex) throws InterruptedException, IOException {
+		SpatialGridGraphGenerator generator = new SpatialGridGraphGenerator(RADIUS, X_RANGE, Y_RANGE);
 		// プロトコルの設定
-		protocol = getProtocol(protocolId, fanout, updateRate);
-
-		Viewer viewer;
-		// グラフを初期化する試行のループ
-		for(int i = 0; i < TRIALS; i++) {
-			// グラフを更新
-			Graph graph = generator.generate(graphId++ + "");
+		Protocol protocol = getProtocol(protocolId, fanout, updateRate);
+		protocol.setView(isView);
+		// Time-Varying Graphの設定
+		TimeVaryingGraph tvg = new TimeVaryingGraph();
+		tvg.setVaryingRate(VARYING_RATE);
+		tvg.setSkipSampling(isSkipSampling);
+		// GMBCはグラフの変化を購読してMBCを差分更新する
+		if (protocol instanceof GossipForMBC) {
+			((GossipForMBC) protocol).subscribe(tvg);
+		}
+		List<TrialRecord> rows = new ArrayList<TrialRecord>();
+
+		Viewer viewer = null;
+		// グラフを更新
+		long graphSeed = SeedSequence.derive(seed, graphIndex);
+		// 同じシードのグラフは生成せずにキャッシュから読み込む（外部のグラフを指定していればそれを使う）
+		CsrGraph csr = loadGraph(generator, graphSeed);
+		Graph graph = null;
+		if (isView) {
+			graph = SpatialGridGraphGenerator.toGraph(csr, graphIndex + "");
 			protocol.setGraph(graph);
 			tvg.setGraph(graph);
+		} else {
+			// ヘッドレスではCSR形式のグラフのまま，エッジの切断をマスクで表して実行する
+			protocol.setGraph(csr);
+			tvg.setGraph(csr);
+			protocol.setEdgeMask(tvg.getEdgeMask());
+		}
 
-			// 同じグラフでの試行のループ
-			for(int j = 0; j < GRAPH_TRIALS; j++) {
-				trialNum++;
+		// 同じグラフでの試行のループ
+		for(int j = 0; j < GRAPH_TRIALS; j++) {
+			int trialNum = graphIndex * GRAPH_TRIALS + j + 1;
+			long trialSeed = SeedSequence.derive(graphSeed, j);
+			tvg.setRandom(SeedSequence.random(trialSeed, SeedSequence.DYNAMICS));
+			protocol.setRandom(SeedSequence.random(trialSeed, SeedSequence.PROTOCOL));
 
-				// 各種初期化
-				tvg.init();
-				protocol.init();
+			// 各種初期化
+			tvg.init();
+			protocol.init();
 
-				// display開始
-				if (isView) viewer = graph.display(false);
+			// display開始
+			if (isView) viewer = graph.display(false);
 
-				// シミュレーション実行
-				do {
-					if (isView) TimeUnit.SECONDS.sleep(1);
-					tvg.run();
-				} while(!protocol.run());
+			// シミュレーション実行
+			do {
 				if (isView) TimeUnit.SECONDS.sleep(1);
+				tvg.run();
+			} while(!protocol.run());
+			if (isView) TimeUnit.SECONDS.sleep(1);
 
-				// display終了
-				if (isView) viewer.close();
+			// display終了
+			if (isView) viewer.close();
 
-				// 結果の出力
-				printResult(trialNum, graph.getNodeCount(), VARYING_RATE, updateRate, protocol.getReachability(),
-						protocol.getMsgNum(), protocol.getHopNum());
-			}
+			// 結果の出力
+			rows.add(formatResult(trialNum, csr.getNodeCount(), VARYING_RATE, updateRate, protocol.getReachability(),
+					protocol.getMsgNum(), protocol.getHopNum(), graphSeed, trialSeed));
 		}
+		return rows;
 	}
 
 	/**
@@ -147,29 +164,23 @@ public class SimulateUpdateMbcVsReachiability extends Simulate{
 	 * @param protocolName プロトコル名
 	 */
 	private void printExplain() {
-		String query = "id,nodeNum,varyingRate,updateRate, reachability,msgNum,hopNum";
-		if(isWrite) {
-			writer.println(protocolName);
-			writer.println(query);
-		}
 		System.out.println(protocolName);
-		System.out.println(query);
+		System.out.println(SCHEMA.header());
 	}
 
 	/**
-	 * 結果の表示
+	 * 試行の結果を生成
 	 * @param trial 試行回数（何度目か）
 	 * @param node ノード数
 	 * @param varying グラフのエッジの変化率
 	 * @param reach メッセージが到達した割合
 	 * @param msg メッセージ数
 	 * @param hop ホップ数
+	 * @param graphSeed グラフのシード
+	 * @param trialSeed 試行のシード
+	 * @return 試行の結果
 	 */
-	private void printResult(int trial, int node, float varying, float update, float reach, int msg, int hop) {
-		String str = trial + "," + node + "," + varying + "," + update + "," + reach + "," + msg + "," + hop;
-		if(isWrite) {
-			writer.println(str);
-		}
-		System.out.println(str);
+	private TrialRecord formatResult(int trial, int node, float varying, float update, float reach, int msg, int hop, long graphSeed, long trialSeed) {
+		return SCHEMA.record(trial, node, varying, update, reach, msg, hop, graphSeed, trialSeed);
 	}
 }
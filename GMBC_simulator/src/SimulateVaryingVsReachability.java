@@ -1,4 +1,6 @@
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.graphstream.graph.Graph;
@@ -61,20 +63,21 @@ public class SimulateVaryingVsReachability extends Simulate {
 	 */
 	private final static int GRAPH_TRIALS = 10;
 
+	/**
+	 * 結果の列の定義
+	 */
+	private final static ResultSchema SCHEMA = new ResultSchema()
+			.addInt("id").addInt("nodeNum").addFloat("varyingFixNum").addFloat("reachability")
+			.addInt("msgNum").addInt("hopNum").addLong("graphSeed").addLong("trialSeed");
+
 	public SimulateVaryingVsReachability(String protocolId, int fanout) {
 		// プロトコルの設定
-		protocol = getProtocol(protocolId, fanout, UPDATE_RATE);
+		this.protocolId = protocolId;
+		this.fanout = fanout;
+		protocolName = getProtocol(protocolId, fanout, UPDATE_RATE).toString();
 	}
 
 	public void run() throws IOException, InterruptedException {
-		// シミュレーションの設定
-		// グラフジェネレータの設定
-		generator = new RandomGeometricGraphGenerator(RADIUS, X_RANGE, Y_RANGE);
-		// Time-Varying Graphの設定
-		tvg = new TimeVaryingGraph();
-		// writer
-		if(isWrite) writer = new ResultWriter(PATH + protocol.toString() + ".csv");
-
 		// プロトコルの説明などを表示
 		printExplain();
 
@@ -85,56 +88,148 @@ public class SimulateVaryingVsReachability extends Simulate {
 		}
 		**/
 
+		// 変化数とグラフの組ごとに並列でシミュレーションを実行
+		// 変化数ごとの試行数は信頼区間で決める（ciWidthの指定がなければ TRIALS * GRAPH_TRIALS 回）
+		TrialScheduler scheduler = new TrialScheduler(threadNum);
+		SequentialStopping stopping = createStopping(SCHEMA, GRAPH_TRIALS, TRIALS);
 		for (int i = 0; i < varyingFixNum; i++) {
-			simulate(varyingFixNumList[i]);
+			final int fixNum = varyingFixNumList[i];
+			stopping.add(graphId, graphIndex -> simulate(fixNum, graphIndex));
+			graphId += stopping.getMaxGraphs();
 		}
-
-		if(isWrite) writer.close();
+		// 1試行ごとの結果と，変化率ごとの要約を出力
+		runStopping(stopping, scheduler, protocolName, SCHEMA, "varyingFixNum");
 	}
 
 	/**
-	 * シミュレーションを実行
-	 * @param varying
+	 * 1つのグラフでシミュレーションを実行
+	 * ジェネレータ，プロトコル，TimeVaryingGraphはこのセルの中だけで利用する
+	 * @param varyingFixNum 切断，再接続するエッジ数
+	 * @param graphIndex グラフのID
+	 * @return 試行の結果
 	 * @throws InterruptedException
+	 * @throws IOException
 	 */
-	private void simulate(int varyingFixNum) throws InterruptedException {
+	private List<TrialRecord> simulate(int varyingFixNum, int graphIndex) throws InterruptedException, IOException {
+		SpatialGridGraphGenerator generator = new SpatialGridGraphGenerator(RADIUS, X_RANGE, Y_RANGE);
+		Protocol protocol = getProtocol(protocolId, fanout, UPDATE_RATE);
+		protocol.setView(isView);
+		TimeVaryingGraph tvg = new TimeVaryingGraph();
+		List<TrialRecord> rows = new ArrayList<TrialRecord>();
+
 		// 変化率の設定
 		tvg.setVaryingFixNum(varyingFixNum);
+		// GMBCはグラフの変化を購読してMBCを差分更新する
+		if (protocol instanceof GossipForMBC) {
+			((GossipForMBC) protocol).subscribe(tvg);
+		}
+
+		Viewer viewer = null;
+		// グラフを更新
+		long graphSeed = SeedSequence.derive(seed, graphIndex);
+		// 同じシードのグラフは生成せずにキャッシュから読み込む（外部のグラフを指定していればそれを使う）
+		CsrGraph csr = loadGraph(generator, graphSeed);
 
-		Viewer viewer;
-		// グラフを初期化する試行のループ
-		for(int i = 0; i < TRIALS; i++) {
-			// グラフを更新
-			Graph graph = generator.generate(graphId++ + "");
+		// ビット並列に対応するプロトコルは，同じグラフでの試行をまとめて実行する
+		if (isBitParallel && !isView) {
+			BitParallelTrials trials = BitParallelTrials.create(protocol, csr);
+			if (trials != null) {
+				return simulateInLanes(trials, csr, varyingFixNum, graphIndex, graphSeed);
+			}
+		}
+		Graph graph = null;
+		if (isView) {
+			graph = SpatialGridGraphGenerator.toGraph(csr, graphIndex + "");
 			protocol.setGraph(graph);
 			tvg.setGraph(graph);
+		} else {
+			// ヘッドレスではCSR形式のグラフのまま，エッジの切断をマスクで表して実行する
+			protocol.setGraph(csr);
+			tvg.setGraph(csr);
+			protocol.setEdgeMask(tvg.getEdgeMask());
+		}
 
-			// 同じグラフでの試行のループ
-			for(int j = 0; j < GRAPH_TRIALS; j++) {
-				trialNum++;
+		// 同じグラフでの試行のループ
+		for(int j = 0; j < GRAPH_TRIALS; j++) {
+			int trialNum = graphIndex * GRAPH_TRIALS + j + 1;
+			long trialSeed = SeedSequence.derive(graphSeed, j);
+			tvg.setRandom(SeedSequence.random(trialSeed, SeedSequence.DYNAMICS));
+			protocol.setRandom(SeedSequence.random(trialSeed, SeedSequence.PROTOCOL));
 
-				// 各種初期化
-				tvg.init();
-				protocol.init();
+			// 各種初期化
+			tvg.init();
+			protocol.init();
 
-				// display開始
-				if (isView) viewer = graph.display(false);
+			// display開始
+			if (isView) viewer = graph.display(false);
 
-				// シミュレーション実行
-				do {
-					if (isView) TimeUnit.SECONDS.sleep(1);
-					tvg.run();
-				} while(!protocol.run());
+			// シミュレーション実行
+			do {
 				if (isView) TimeUnit.SECONDS.sleep(1);
+				tvg.run();
+			} while(!protocol.run());
+			if (isView) TimeUnit.SECONDS.sleep(1);
+
+			// display終了
+			if (isView) viewer.close();
 
-				// display終了
-				if (isView) viewer.close();
+			// 結果の出力
+			rows.add(formatResult(trialNum, csr.getNodeCount(), varyingFixNum, protocol.getReachability(),
+					protocol.getMsgNum(), protocol.getHopNum(), graphSeed, trialSeed));
+		}
+		return rows;
+	}
+
+	/**
+	 * 1つのグラフでの試行を，ビット並列でまとめて実行
+	 * 試行ごとにTimeVaryingGraphを用意し，切断中のエッジはレーンのビットで共有する
+	 * 各試行のシードはsimulateと同じ導出による
+	 * @param trials ビット並列の実行
+	 * @param csr 対象となるグラフ
+	 * @param varyingFixNum 切断，再接続するエッジ数
+	 * @param graphIndex グラフのID
+	 * @param graphSeed グラフのシード
+	 * @return 試行の結果
+	 */
+	private List<TrialRecord> simulateInLanes(BitParallelTrials trials, CsrGraph csr, int varyingFixNum, int graphIndex, long graphSeed) {
+		List<TrialRecord> rows = new ArrayList<TrialRecord>();
+
+		// レーンごとのTimeVaryingGraph
+		TimeVaryingGraph[] tvgs = new TimeVaryingGraph[Math.min(BitParallelTrials.LANES, GRAPH_TRIALS)];
+		for (int l = 0; l < tvgs.length; l++) {
+			tvgs[l] = new TimeVaryingGraph();
+			tvgs[l].setGraph(csr);
+			tvgs[l].setVaryingFixNum(varyingFixNum);
+			tvgs[l].setLaneMask(trials.getEdgeMask(), l);
+		}
+
+		// LANES個ずつ試行をまとめて実行
+		for (int first = 0; first < GRAPH_TRIALS; first += tvgs.length) {
+			int laneNum = Math.min(tvgs.length, GRAPH_TRIALS - first);
+			long[] trialSeeds = new long[laneNum];
+			for (int l = 0; l < laneNum; l++) {
+				trialSeeds[l] = SeedSequence.derive(graphSeed, first + l);
+				tvgs[l].setRandom(SeedSequence.random(trialSeeds[l], SeedSequence.DYNAMICS));
+				trials.setRandom(l, SeedSequence.random(trialSeeds[l], SeedSequence.PROTOCOL));
+				tvgs[l].init();
+			}
+			trials.init(laneNum);
 
-				// 結果の出力
-				printResult(trialNum, graph.getNodeCount(), varyingFixNum, protocol.getReachability(),
-						protocol.getMsgNum(), protocol.getHopNum());
+			// 実行中のレーンのグラフだけを変化させる
+			do {
+				for (long lanes = trials.getRunning(); lanes != 0; lanes &= lanes - 1) {
+					tvgs[Long.numberOfTrailingZeros(lanes)].run();
+				}
+			} while (!trials.run());
+
+			// 結果の出力
+			for (int l = 0; l < laneNum; l++) {
+				int trialNum = graphIndex * GRAPH_TRIALS + first + l + 1;
+				rows.add(formatResult(trialNum, csr.getNodeCount(), varyingFixNum, trials.getReachability(l),
+						trials.getMsgNum(l), trials.getHopNum(l), graphSeed, trialSeeds[l]));
 			}
 		}
+		return rows;
 	}
 
 	/**
@@ -142,29 +237,23 @@ public class SimulateVaryingVsReachability extends Simulate {
 	 * @param protocolName プロトコル名
 	 */
 	private void printExplain() {
-		String query = "id,nodeNum,varyingFixNum,reachability,msgNum,hopNum";
-		if(isWrite) {
-			writer.println(protocol.toString());
-			writer.println(query);
-		}
-		System.out.println(protocol.toString());
-		System.out.println(query);
+		System.out.println(protocolName);
+		System.out.println(SCHEMA.header());
 	}
 
 	/**
-	 * 結果の表示
+	 * 試行の結果を生成
 	 * @param trial 試行回数（何度目か）
 	 * @param node ノード数
 	 * @param varying グラフのエッジの変化率
 	 * @param reach メッセージが到達した割合
 	 * @param msg メッセージ数
 	 * @param hop ホップ数
+	 * @param graphSeed グラフのシード
+	 * @param trialSeed 試行のシード
+	 * @return 試行の結果
 	 */
-	private void printResult(int trial, int node, float varying, float reach, int msg, int hop) {
-		String str = trial + "," + node + "," + varying + "," + reach + "," + msg + "," + hop;
-		if(isWrite) {
-			writer.println(str);
-		}
-		System.out.println(str);
+	private TrialRecord formatResult(int trial, int node, float varying, float reach, int msg, int hop, long graphSeed, long trialSeed) {
+		return SCHEMA.record(trial, node, varying, reach, msg, hop, graphSeed, trialSeed);
 	}
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ public class Simulator {
 	 * Flooding: 0
 	 * FFG: 1
 	 * GMBC: 2
+	 * DOFlooding: 3
 	 */
 	private final static String[] PROTOCOL_ID = {"GMBC", "FFG"};
 
@@ -40,6 +41,22 @@ public class Simulator {
 			simu.run();
 		}
 
+		// グラフの変化率と到達率，配送時間のシミュレーション（非同期の実行）
+		/*
+		for(int i = 0; i < PROTOCOL_NUM; i++) {
+			Simulate simu = new SimulateAsyncVsReachability(PROTOCOL_ID[i], FANOUT[i]);
+			simu.run();
+		}
+		*/
+
+		// 静的なグラフでの到達率のシミュレーション（シャードに分けた複数プロセスでの実行）
+		/*
+		for(int i = 0; i < PROTOCOL_NUM; i++) {
+			Simulate simu = new SimulateShardedVsReachability(PROTOCOL_ID[i], FANOUT[i]);
+			simu.run();
+		}
+		*/
+
 		// MBCの更新頻度と到達率のシミュレーション
 		/*
 		for (int i = 0; i < PROTOCOL_NUM; i++) {
@@ -0,0 +1,57 @@
+import java.util.Random;
+
+/**
+ * 独立に確率pで選ばれる要素を，幾何分布の間隔で飛ばしながら選ぶクラス
+ * 要素ごとに乱数を引く代わりに，次に選ばれる要素まで直接進むので，
+ * 1回の走査の計算量は要素数ではなく選ばれる要素の数に比例する
+ */
+public class SkipSampler {
+	/**
+	 * 選ぶ確率
+	 */
+	private final double rate;
+
+	/**
+	 * log(1 - rate)（間隔の計算に利用）
+	 */
+	private final double logQ;
+
+	/**
+	 * コンストラクタ
+	 * @param rate 各要素が選ばれる確率
+	 */
+	public SkipSampler(double rate) {
+		this.rate = rate;
+		this.logQ = Math.log(1.0 - rate);
+	}
+
+	/**
+	 * 最初に選ばれる要素のインデックスを返す
+	 * @param rnd 乱数生成器
+	 * @param size 要素数
+	 * @return インデックス．選ばれる要素がなければsize以上
+	 */
+	public long first(Random rnd, int size) {
+		return next(rnd, -1, size);
+	}
+
+	/**
+	 * 次に選ばれる要素のインデックスを返す
+	 * @param rnd 乱数生成器
+	 * @param current 直前に選ばれた要素のインデックス
+	 * @param size 要素数
+	 * @return インデックス．選ばれる要素がなければsize以上
+	 */
+	public long next(Random rnd, long current, int size) {
+		// 確率が1以上なら全て，0以下なら何も選ばない
+		if (rate >= 1.0) {
+			return current + 1;
+		}
+		if (rate <= 0.0) {
+			return size;
+		}
+		// 次に選ばれるまでに飛ばす要素の数（幾何分布）
+		double gap = Math.floor(Math.log(1.0 - rnd.nextDouble()) / logQ);
+		return gap >= size ? size : current + 1 + (long) gap;
+	}
+}
@@ -0,0 +1,203 @@
+import java.util.Arrays;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.graph.implementations.SingleGraph;
+
+/**
+ * 空間をグリッド（セル）に分割してRandomGeometricGraphを生成する
+ * 1辺がradiusのセルにノードを振り分け，隣接する9セル内のノードとだけ距離を比較するので，
+ * 全ノード対を比較するRandomGeometricGraphGeneratorと同じ分布のグラフをほぼ線形時間で生成できる<br>
+ * ノードの座標，接続の条件，エッジの順序はRandomGeometricGraphGeneratorと同じ
+ */
+public class SpatialGridGraphGenerator extends RandomGeometricGraphGenerator {
+
+	/**
+	 * コンストラクタ
+	 * @param nodeNum ノード数
+	 * @param radius ノードが接続する半径距離（閾値）
+	 */
+	public SpatialGridGraphGenerator(int nodeNum, float radius, float xRange, float yRange) {
+		super(nodeNum, radius, xRange, yRange);
+	}
+
+	/**
+	 * ノード数のみ指定するコンストラクタ．ポワソン分布によりノードの接続する半径距離（閾値）を算出する
+	 * @param nodeNum ノード数
+	 */
+	public SpatialGridGraphGenerator(int nodeNum, float xRange, float yRange) {
+		super(nodeNum, xRange, yRange);
+	}
+
+	/**
+	 * ノードの接続する半径距離（閾値）のみ指定するコンストラクタ．ポワソン分布によりノード数を算出する
+	 * @param radius ノードの接続する半径距離（閾値）
+	 */
+	public SpatialGridGraphGenerator(float radius, float xRange, float yRange) {
+		super(radius, xRange, yRange);
+	}
+
+	/**
+	 * Random Geometric Graphを生成する
+	 * 連結したグラフをCSR形式で生成してから，GraphStreamのグラフへ変換する
+	 * @param arg グラフ名
+	 * @return 生成したグラフ
+	 */
+	@Override
+	public Graph generate(String arg) {
+		return toGraph(generateCsr(), arg);
+	}
+
+	/**
+	 * Random Geometric GraphをCSR形式で生成する
+	 * GraphStreamを使わないので，大規模なグラフの生成に利用する
+	 * 連結していなければ再生成する（生成した回数はGraphGenerateEventに記録する）
+	 * @return 生成したグラフ
+	 */
+	public CsrGraph generateCsr() {
+		GraphGenerateEvent event = new GraphGenerateEvent();
+		event.begin();
+		int attempts = 0;
+		CsrGraph csr;
+		do {
+			attempts++;
+			csr = generateOnce();
+		// 連結していなければ再生成
+		} while (!csr.isConnected());
+		if (event.shouldCommit()) {
+			event.nodeNum = nodeNum;
+			event.attempts = attempts;
+			event.commit();
+		}
+		return csr;
+	}
+
+	/**
+	 * グラフを1度だけ生成する（連結とは限らない）
+	 * @return 生成したグラフ
+	 */
+	private CsrGraph generateOnce() {
+		// ノードの座標（RandomGeometricGraphGeneratorと同じ順序で乱数を引く）
+		int[] x = new int[nodeNum];
+		int[] y = new int[nodeNum];
+		for (int i = 0; i < nodeNum; i++) {
+			x[i] = rnd.nextInt((int) xRange);
+			y[i] = rnd.nextInt((int) yRange);
+		}
+
+		// セルの大きさと数
+		float cellSize = Math.max(radius, 1.0f);
+		int cols = (int) (xRange / cellSize) + 1;
+		int rows = (int) (yRange / cellSize) + 1;
+
+		// ノードをセルへ振り分け（計数ソートなので，セル内はインデックスの昇順）
+		int[] cellStart = new int[cols * rows + 1];
+		int[] cellOf = new int[nodeNum];
+		for (int i = 0; i < nodeNum; i++) {
+			cellOf[i] = (int) (y[i] / cellSize) * cols + (int) (x[i] / cellSize);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < cols * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		int[] cellNode = new int[nodeNum];
+		int[] fill = Arrays.copyOf(cellStart, cols * rows);
+		for (int i = 0; i < nodeNum; i++) {
+			cellNode[fill[cellOf[i]]++] = i;
+		}
+
+		// 1回目の走査で次数を数え，2回目で隣接ノードを格納する
+		int[] offset = new int[nodeNum + 1];
+		for (int i = 0; i < nodeNum; i++) {
+			offset[i + 1] = offset[i] + scanNeighbor(i, x, y, cellSize, cols, rows, cellStart, cellNode, null, 0);
+		}
+		int[] neighbor = new int[offset[nodeNum]];
+		for (int i = 0; i < nodeNum; i++) {
+			scanNeighbor(i, x, y, cellSize, cols, rows, cellStart, cellNode, neighbor, offset[i]);
+			Arrays.sort(neighbor, offset[i], offset[i + 1]);
+		}
+
+		// エッジのIDを割り当てる
+		// RandomGeometricGraphGeneratorと同じく，追加されたノードiと既存のノードj(<i)の順
+		int edgeNum = offset[nodeNum] / 2;
+		int[] edgeId = new int[offset[nodeNum]];
+		int[] edgeNode0 = new int[edgeNum];
+		int[] edgeNode1 = new int[edgeNum];
+		int id = 0;
+		for (int i = 0; i < nodeNum; i++) {
+			for (int k = offset[i]; k < offset[i + 1]; k++) {
+				int j = neighbor[k];
+				if (j >= i) {
+					break;
+				}
+				edgeNode0[id] = i;
+				edgeNode1[id] = j;
+				edgeId[k] = id;
+				edgeId[Arrays.binarySearch(neighbor, offset[j], offset[j + 1], i)] = id;
+				id++;
+			}
+		}
+
+		float[] fx = new float[nodeNum];
+		float[] fy = new float[nodeNum];
+		for (int i = 0; i < nodeNum; i++) {
+			fx[i] = x[i];
+			fy[i] = y[i];
+		}
+		return new CsrGraph(offset, neighbor, edgeId, edgeNode0, edgeNode1, fx, fy, null);
+	}
+
+	/**
+	 * ノードiの周囲9セルを走査し，接続するノードを数える
+	 * @param out 接続するノードの格納先（nullなら数えるだけ）
+	 * @param pos 格納を開始する位置
+	 * @return 接続するノードの数
+	 */
+	private int scanNeighbor(int i, int[] x, int[] y, float cellSize, int cols, int rows,
+			int[] cellStart, int[] cellNode, int[] out, int pos) {
+		int cx = (int) (x[i] / cellSize);
+		int cy = (int) (y[i] / cellSize);
+		double r2 = (double) radius * radius;
+		int count = 0;
+		for (int gy = Math.max(cy - 1, 0); gy <= Math.min(cy + 1, rows - 1); gy++) {
+			for (int gx = Math.max(cx - 1, 0); gx <= Math.min(cx + 1, cols - 1); gx++) {
+				int c = gy * cols + gx;
+				for (int p = cellStart[c]; p < cellStart[c + 1]; p++) {
+					int j = cellNode[p];
+					int dx = x[i] - x[j];
+					int dy = y[i] - y[j];
+					// isConnectと同じ判定
+					if (j != i && r2 >= dx * dx + dy * dy) {
+						if (out != null) {
+							out[pos + count] = j;
+						}
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * CSR形式のグラフをGraphStreamのグラフへ変換する
+	 * ノードとエッジのIDはRandomGeometricGraphGeneratorと同じ形式にする
+	 * @param csr 変換するグラフ
+	 * @param arg グラフ名
+	 * @return 変換したグラフ
+	 */
+	public static Graph toGraph(CsrGraph csr, String arg) {
+		Graph graph = new SingleGraph("RGG: " + arg);
+		for (int v = 0; v < csr.getNodeCount(); v++) {
+			Node node = graph.addNode(csr.getId(v));
+			node.addAttribute("x", (int) csr.getX(v));
+			node.addAttribute("y", (int) csr.getY(v));
+		}
+		for (int e = 0; e < csr.getEdgeCount(); e++) {
+			String source = csr.getId(csr.getEdgeNode0(e));
+			String target = csr.getId(csr.getEdgeNode1(e));
+			graph.addEdge(source + target, source, target);
+		}
+		return graph;
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * 1つの列のオンラインの統計量
+ * 平均と分散（Welford法），最小値，最大値と分位点のスケッチ（QuantileSketch）を，値を保持せずに更新する
+ */
+public class StreamingStats {
+	/**
+	 * 値の数
+	 */
+	private long count;
+
+	/**
+	 * 平均と偏差平方和
+	 */
+	private double mean;
+	private double m2;
+
+	/**
+	 * 最小値と最大値
+	 */
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * 分位点のスケッチ
+	 */
+	private QuantileSketch sketch = new QuantileSketch();
+
+	/**
+	 * 値を追加する
+	 * @param x 値
+	 */
+	public void add(double x) {
+		count++;
+		double delta = x - mean;
+		mean += delta / count;
+		m2 += delta * (x - mean);
+		min = Math.min(min, x);
+		max = Math.max(max, x);
+		sketch.add(x);
+	}
+
+	/**
+	 * 値の数を取得する
+	 * @return 値の数
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * 平均を取得する
+	 * @return 平均（値がなければNaN）
+	 */
+	public double getMean() {
+		return count > 0 ? mean : Double.NaN;
+	}
+
+	/**
+	 * 標本標準偏差を取得する
+	 * @return 標準偏差（値が2つ未満なら0）
+	 */
+	public double getStdDev() {
+		return count > 1 ? Math.sqrt(m2 / (count - 1)) : 0;
+	}
+
+	/**
+	 * 最小値を取得する
+	 * @return 最小値（値がなければNaN）
+	 */
+	public double getMin() {
+		return count > 0 ? min : Double.NaN;
+	}
+
+	/**
+	 * 最大値を取得する
+	 * @return 最大値（値がなければNaN）
+	 */
+	public double getMax() {
+		return count > 0 ? max : Double.NaN;
+	}
+
+	/**
+	 * 分位点を推定する
+	 * @param q 分位（0から1）
+	 * @return 分位点（値がなければNaN）
+	 */
+	public double getQuantile(double q) {
+		return sketch.quantile(q);
+	}
+}
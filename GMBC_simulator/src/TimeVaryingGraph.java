@@ -1,30 +1,34 @@
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Random;
 
 import org.graphstream.graph.Edge;
 import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
 
 /**
  * エッジとその属すエリアを表す構造体
  */
 class EdgeArea {
 	Edge edge;
-	String area;
+	/**
+	 * CSR形式のエッジID（CSR形式のグラフを設定した場合のみ）
+	 */
+	int id = -1;
+	/**
+	 * エッジが属するエリアの番号（AreaPartition）
+	 */
+	int area;
 	boolean isDead;
-	EdgeArea(Edge edge, String area) {
+	EdgeArea(Edge edge, int area) {
 		this.edge = edge;
 		this.area = area;
 		isDead = false;
 	}
-	public EdgeArea(Edge edge, int area) {
-		this.edge = edge;
-		if (area == 0) {
-			this.area = "odd";
-		} else {
-			this.area = "even";
-		}
-		isDead = false;
+	EdgeArea(int id, int area) {
+		this((Edge) null, area);
+		this.id = id;
 	}
 }
 
@@ -32,7 +36,9 @@ class EdgeArea {
  * Time-VeryingGraphを再現するクラス．
  * 1stepごとに各エッジが確率で切断，再接続する<br>
  * 再接続されるエッジは一度接続されていたエッジだけであり，全く新しいエッジが生まれることはない<br>
- * コンストラクタで対象になるグラフを指定し，runで1step変化する
+ * コンストラクタで対象になるグラフを指定し，runで1step変化する<br>
+ * CSR形式のグラフを設定した場合は，グラフの構造は変えずに切断中のエッジをマスク（BitSet）で表す<br>
+ * 変化の確率はエリア（AreaPartition）ごとに変えられ，各エッジのエリアはsetGraphで求めておく
  */
 public class TimeVaryingGraph {
 	/**
@@ -45,6 +51,33 @@ public class TimeVaryingGraph {
 	 */
 	private Graph graph;
 
+	/**
+	 * 対象となるCSR形式のグラフ
+	 * 設定されている場合はGraphStreamのグラフを使わず，マスクだけを切り替える
+	 */
+	private CsrGraph csr;
+
+	/**
+	 * 切断中のエッジのマスク（CSRのエッジIDで管理）
+	 */
+	private BitSet deadEdges = new BitSet();
+
+	/**
+	 * ビット並列の試行と共有する，切断中のエッジのマスク（BitParallelTrials.getEdgeMask）
+	 * 切断，再接続のたびにこのグラフのレーンのビットだけを更新する．nullなら利用しない
+	 */
+	private long[] laneMask;
+
+	/**
+	 * このグラフのレーンを表すビット
+	 */
+	private long laneBit;
+
+	/**
+	 * 直前のstepで切断，再接続したエッジの数（DynamicsEventに記録）
+	 */
+	private int changedNum;
+
 	/**
 	 * 離脱エッジが固定数で計測するか
 	 */
@@ -67,20 +100,54 @@ public class TimeVaryingGraph {
 	private float biasRate = 0.0f;
 
 	/**
-	 * 分割するときの1エリアの横幅
+	 * エリアの分割
+	 */
+	private AreaPartition partition;
+
+	/**
+	 * エリアごとの変化の確率（setAreaRatesで指定した場合）
+	 * nullなら，varyingRateとbiasRateから市松模様に決める
+	 */
+	private float[] areaRates;
+
+	/**
+	 * 各エリアで用いる変化の確率
 	 */
-	private int areaX;
+	private float[] rates = new float[0];
 
 	/**
-	 * 分割するときの1エリアの縦幅
+	 * 各エリアのスキップサンプリング
 	 */
-	private int areaY;
+	private SkipSampler[] samplers = new SkipSampler[0];
 
 	/**
 	 * エッジとエリアのリスト
 	 */
 	private ArrayList<EdgeArea> edgeList = new ArrayList<EdgeArea>();
 
+	/**
+	 * エッジリストのインデックスの並び（固定数の選択で利用）
+	 * 選択のたびに並びを入れ替える．どの並びからでも一様に選べるが，
+	 * 試行の結果が試行のシードだけで決まるよう，試行の初期化（init）で元の並びに戻す
+	 */
+	private int[] order = new int[0];
+
+	/**
+	 * エリアごとのエッジ（スキップサンプリングで利用）
+	 */
+	private EdgeArea[][] areaEdges = new EdgeArea[0][];
+
+	/**
+	 * エッジを幾何分布の間隔で飛ばしながら選ぶか
+	 * trueの場合，1stepの計算量は変化するエッジの数に比例する
+	 */
+	private boolean isSkipSampling = false;
+
+	/**
+	 * エッジの変化を通知するリスナ
+	 */
+	private List<GraphChangeListener> listeners = new ArrayList<GraphChangeListener>();
+
 	/**
 	 * グラフを設定する（偏りのある切断に必要な情報を付加）
 	 * @param graph
@@ -90,22 +157,36 @@ public class TimeVaryingGraph {
 	 * @param separateY
 	 */
 	public void setGraph(Graph graph, float rangeX, float rangeY, int separateX, int separateY) {
+		setGraph(graph, new AreaPartition(rangeX, rangeY, separateX, separateY));
+	}
+
+	/**
+	 * グラフを設定する
+	 * 各エッジの中心座標が属するエリアを求めておく
+	 * @param graph 対象になるグラフ
+	 * @param partition エリアの分割
+	 */
+	public void setGraph(Graph graph, AreaPartition partition) {
 		edgeList.clear();
 
 		this.graph = graph;
-		this.areaX = (int)rangeX / separateX;
-		this.areaY = (int)rangeY / separateY;
+		this.csr = null;
+		this.partition = partition;
 
-		// エッジを奇数エリアと偶数エリアで振り分け
+		// ノードの座標（属性の取り出しはノードごとに1度だけ）
+		int[] x = new int[graph.getNodeCount()];
+		int[] y = new int[graph.getNodeCount()];
+		for (Node node : graph.getEachNode()) {
+			x[node.getIndex()] = (int)node.getAttribute("x");
+			y[node.getIndex()] = (int)node.getAttribute("y");
+		}
+		// エッジをエリアで振り分け
 		for(Edge edge : graph.getEachEdge()) {
-			// エッジの中心座標を求める
-			int x = ((int)edge.getNode0().getAttribute("x") + (int)edge.getNode1().getAttribute("x")) / 2;
-			int y = ((int)edge.getNode0().getAttribute("y") + (int)edge.getNode1().getAttribute("y")) / 2;
-			// どちらのエリアに属すのか判定
-			// judgeが偶数なら奇数エリア，奇数なら偶数エリア（0を含むのでここでどうしてもずれる）
-			int judge = (int)(x / areaX) + (int)(y / areaY);
-			edgeList.add(new EdgeArea(edge, judge % 2));
+			int node0 = edge.getNode0().getIndex();
+			int node1 = edge.getNode1().getIndex();
+			edgeList.add(new EdgeArea(edge, getArea(x[node0], y[node0], x[node1], y[node1])));
 		}
+		setAreaEdges();
 	}
 
 	/**
@@ -116,6 +197,131 @@ public class TimeVaryingGraph {
 		setGraph(graph, 150, 150, 3, 3);
 	}
 
+	/**
+	 * CSR形式のグラフを設定する（偏りのある切断に必要な情報を付加）
+	 * @param csr 対象となるグラフ
+	 * @param rangeX
+	 * @param rangeY
+	 * @param separateX
+	 * @param separateY
+	 */
+	public void setGraph(CsrGraph csr, float rangeX, float rangeY, int separateX, int separateY) {
+		setGraph(csr, new AreaPartition(rangeX, rangeY, separateX, separateY));
+	}
+
+	/**
+	 * CSR形式のグラフを設定する
+	 * エッジのリストはエッジIDの順（GraphStreamに変換したグラフのエッジの順）になる
+	 * @param csr 対象となるグラフ
+	 * @param partition エリアの分割
+	 */
+	public void setGraph(CsrGraph csr, AreaPartition partition) {
+		edgeList.clear();
+		deadEdges.clear();
+
+		this.graph = null;
+		this.csr = csr;
+		this.partition = partition;
+
+		// エッジをエリアで振り分け
+		for (int e = 0; e < csr.getEdgeCount(); e++) {
+			int node0 = csr.getEdgeNode0(e);
+			int node1 = csr.getEdgeNode1(e);
+			edgeList.add(new EdgeArea(e, getArea((int)csr.getX(node0), (int)csr.getY(node0),
+					(int)csr.getX(node1), (int)csr.getY(node1))));
+		}
+		setAreaEdges();
+	}
+
+	/**
+	 * エッジの中心座標が属するエリアを求める
+	 * @param x0 端点0のx座標
+	 * @param y0 端点0のy座標
+	 * @param x1 端点1のx座標
+	 * @param y1 端点1のy座標
+	 * @return エリアの番号
+	 */
+	private int getArea(int x0, int y0, int x1, int y1) {
+		return partition.getArea((x0 + x1) / 2, (y0 + y1) / 2);
+	}
+
+	/**
+	 * エッジをエリアごとに振り分け，固定数の選択で使うインデックスの並びを用意する
+	 */
+	private void setAreaEdges() {
+		order = new int[edgeList.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		int[] count = new int[partition.size()];
+		for (EdgeArea edge : edgeList) {
+			count[edge.area]++;
+		}
+		areaEdges = new EdgeArea[partition.size()][];
+		for (int a = 0; a < areaEdges.length; a++) {
+			areaEdges[a] = new EdgeArea[count[a]];
+			count[a] = 0;
+		}
+		for (EdgeArea edge : edgeList) {
+			areaEdges[edge.area][count[edge.area]++] = edge;
+		}
+		updateRates();
+	}
+
+	/**
+	 * CSR形式のグラフを設定する
+	 * @param csr 対象になるグラフ
+	 */
+	public void setGraph(CsrGraph csr) {
+		setGraph(csr, 150, 150, 3, 3);
+	}
+
+	/**
+	 * 切断中のエッジのマスクを取得する（CSR形式のグラフを設定した場合）
+	 * runのたびに更新されるので，プロトコルにはそのまま共有する
+	 * @return 切断中のエッジ（CSRのエッジID）
+	 */
+	public BitSet getEdgeMask() {
+		return deadEdges;
+	}
+
+	/**
+	 * ビット並列の試行と切断中のエッジを共有する（CSR形式のグラフを設定した場合）
+	 * レーンごとにTimeVaryingGraphを用意し，それぞれ異なるレーンを指定する
+	 * @param laneMask 各エッジが切断中のレーン．BitParallelTrials.getEdgeMask()を渡す
+	 * @param lane このグラフのレーン
+	 */
+	public void setLaneMask(long[] laneMask, int lane) {
+		this.laneMask = laneMask;
+		this.laneBit = 1L << lane;
+	}
+
+	/**
+	 * エッジの変化を通知するリスナを追加する
+	 * @param listener リスナ
+	 */
+	public void addListener(GraphChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * 乱数生成器を設定する
+	 * @param rnd 乱数生成器
+	 */
+	public void setRandom(Random rnd) {
+		this.rnd = rnd;
+	}
+
+	/**
+	 * 幾何分布の間隔で変化するエッジを選ぶかを設定する
+	 * エッジごとに乱数を引かないので，変化率が低いほど速い（乱数列は通常の選択とは異なる）
+	 * @param isSkipSampling スキップサンプリングを行うならtrue
+	 */
+	public void setSkipSampling(boolean isSkipSampling) {
+		this.isSkipSampling = isSkipSampling;
+	}
+
 	/**
 	 * 切断，再接続される確率を設定する
 	 * @param varyingRate 切断，再接続される確率
@@ -124,6 +330,7 @@ public class TimeVaryingGraph {
 		this.varyingRate = varyingRate;
 		// ランダムに選択する
 		this.varyingFixedMode = false;
+		updateRates();
 	}
 
 	/**
@@ -138,18 +345,45 @@ public class TimeVaryingGraph {
 
 	/**
 	 * 偏りのあるグラフの設定
-	 * @param biasRate
-	 * @param rangeX
-	 * @param rangeY
-	 * @param separateX
-	 * @param separateY
+	 * 市松模様の一方のエリアは varyingRate * (1 - biasRate)，他方は varyingRate * (1 + biasRate) で変化する
+	 * @param biasRate 偏りの強さ
 	 */
 	public void setBias(float biasRate) {
 		this.biasRate = biasRate;
+		updateRates();
 	}
 
 	/**
-	 * 初期化．切断しているエッジを復帰させる
+	 * エリアごとの変化の確率を指定する
+	 * 指定した場合はvaryingRateとbiasRateの代わりに用いる（nullで解除）
+	 * @param areaRates エリアの番号を添字とする変化の確率
+	 */
+	public void setAreaRates(float[] areaRates) {
+		this.areaRates = areaRates;
+		this.varyingFixedMode = false;
+		updateRates();
+	}
+
+	/**
+	 * 各エリアの変化の確率と，スキップサンプリングを求め直す
+	 */
+	private void updateRates() {
+		if (partition == null) {
+			return;
+		}
+		if (areaRates != null && areaRates.length != partition.size()) {
+			throw new IllegalArgumentException("エリアの数と確率の数が一致しない: " + areaRates.length + " != " + partition.size());
+		}
+		rates = new float[partition.size()];
+		samplers = new SkipSampler[partition.size()];
+		for (int a = 0; a < rates.length; a++) {
+			rates[a] = getVaryingRate(a);
+			samplers[a] = new SkipSampler(rates[a]);
+		}
+	}
+
+	/**
+	 * 初期化．切断しているエッジを復帰させ，固定数の選択の並びを元に戻す
 	 */
 	public void init() {
 		// 切断中の全てのエッジを再接続
@@ -158,38 +392,57 @@ public class TimeVaryingGraph {
 				revaivalEdge(edge);
 			}
 		}
+		// 前の試行の入れ替えを持ち越さない
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
 	}
 
 	/**
 	 * 1stepだけ実行する．
-	 * 接続されているエッジは確率で切断され，切断されているエッジは確率で再接続される
+	 * 接続されているエッジは確率で切断され，切断されているエッジは確率で再接続される<br>
+	 * JFRで記録している場合は，stepごとにDynamicsEventを記録する
 	 */
 	public void run() {
+		DynamicsEvent event = DynamicsEvent.TYPE.isEnabled() ? new DynamicsEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		changedNum = 0;
 		if (varyingFixedMode) {
 			runInFixed();
 		} else {
 			runInRandom();
 		}
+		if (event != null && event.shouldCommit()) {
+			event.kind = "varying";
+			event.changedEdgeNum = changedNum;
+			event.commit();
+		}
 	}
 
 	/**
 	 * 1stepだけ実行する
-	 * 固定数エッジを選択
+	 * 固定数（varyingFixedNum個）のエッジを選択する．計算量はO(varyingFixedNum)
 	 */
 	private void runInFixed() {
-		Collections.shuffle(edgeList);
-		int cnt = 1;
-		for (EdgeArea edge : edgeList) {
+		// 部分的なFisher-Yatesで，重複のないvaryingFixedNum個のエッジを選ぶ
+		// orderの先頭i個が選択済みで，残りから1つずつ選んで先頭に移す
+		int size = order.length;
+		int k = Math.min(varyingFixedNum, size);
+		for (int i = 0; i < k; i++) {
+			int j = i + rnd.nextInt(size - i);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+
+			EdgeArea edge = edgeList.get(order[i]);
 			// isDeadがfalseなら切断，trueなら再接続
 			if (edge.isDead) {
 				revaivalEdge(edge);
 			} else {
 				removeEdge(edge);
 			}
-
-			if (cnt > varyingFixedNum)
-				break;
-			cnt++;
 		}
 	}
 
@@ -198,10 +451,15 @@ public class TimeVaryingGraph {
 	 * ランダムにエッジを選択する
 	 */
 	private void runInRandom() {
+		if (isSkipSampling) {
+			runInSkip();
+			return;
+		}
 		// エッジのリストを周回
-		for(EdgeArea edge : edgeList) {
+		for (int i = 0; i < edgeList.size(); i++) {
+			EdgeArea edge = edgeList.get(i);
 			// 属するエリアで変化する確率を決定
-			float varyingRate = getVaryingRate(edge.area);
+			float varyingRate = rates[edge.area];
 
 			// 確率でエッジが変化
 			if (rnd.nextDouble() <= varyingRate) {
@@ -216,16 +474,39 @@ public class TimeVaryingGraph {
 		}
 	}
 
+	/**
+	 * 1stepだけ実行する
+	 * エリアごとに，変化するエッジまで幾何分布の間隔で飛ばしながら選択する
+	 */
+	private void runInSkip() {
+		for (int a = 0; a < areaEdges.length; a++) {
+			EdgeArea[] edges = areaEdges[a];
+			SkipSampler sampler = samplers[a];
+			for (long i = sampler.first(rnd, edges.length); i < edges.length; i = sampler.next(rnd, i, edges.length)) {
+				EdgeArea edge = edges[(int) i];
+				// isDeadがfalseなら切断，trueなら再接続
+				if (edge.isDead) {
+					revaivalEdge(edge);
+				} else {
+					removeEdge(edge);
+				}
+			}
+		}
+	}
+
 	/**
 	 * エリアにおける変化の確率を計算
-	 * @param area エッジが属するエリア
+	 * @param area エリアの番号
 	 * @return 変化の確率
 	 */
-	private float getVaryingRate(String area) {
+	private float getVaryingRate(int area) {
+		if (areaRates != null) {
+			return areaRates[area];
+		}
 		float rate = varyingRate;
-		if (area.equals("odd")) {
+		if (partition.getParity(area) == 0) {
 			rate -= varyingRate * biasRate;
-		} else if(area.equals("even")) {
+		} else {
 			rate += varyingRate * biasRate;
 		}
 		return rate;
@@ -236,6 +517,19 @@ public class TimeVaryingGraph {
 	 * @param edge
 	 */
 	private void removeEdge(EdgeArea edge) {
+		changedNum++;
+		if (csr != null) {
+			deadEdges.set(edge.id);
+			if (laneMask != null) laneMask[edge.id] |= laneBit;
+			edge.isDead = true;
+			for (GraphChangeListener listener : listeners) {
+				listener.edgeChanged(csr.getEdgeNode0(edge.id), csr.getEdgeNode1(edge.id));
+			}
+			return;
+		}
+		for (GraphChangeListener listener : listeners) {
+			listener.edgeChanged(edge.edge.getNode0(), edge.edge.getNode1());
+		}
 		graph.removeEdge(edge.edge);
 		edge.isDead = true;
 	}
@@ -245,9 +539,22 @@ public class TimeVaryingGraph {
 	 * @param edge
 	 */
 	private void revaivalEdge(EdgeArea edge) {
+		changedNum++;
+		if (csr != null) {
+			deadEdges.clear(edge.id);
+			if (laneMask != null) laneMask[edge.id] &= ~laneBit;
+			edge.isDead = false;
+			for (GraphChangeListener listener : listeners) {
+				listener.edgeChanged(csr.getEdgeNode0(edge.id), csr.getEdgeNode1(edge.id));
+			}
+			return;
+		}
 		String source = edge.edge.getNode0().getId();
 		String target = edge.edge.getNode1().getId();
 		edge.edge =  graph.addEdge(source + target, source, target);
 		edge.isDead = false;
+		for (GraphChangeListener listener : listeners) {
+			listener.edgeChanged(edge.edge.getNode0(), edge.edge.getNode1());
+		}
 	}
 }
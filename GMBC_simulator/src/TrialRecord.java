@@ -0,0 +1,58 @@
+/**
+ * 1試行の結果
+ * ResultSchemaの列の順に，型付きの値を持つ
+ */
+public class TrialRecord {
+	/**
+	 * 列の定義
+	 */
+	private final ResultSchema schema;
+
+	/**
+	 * 各列の値
+	 */
+	private final Object[] values;
+
+	/**
+	 * コンストラクタ
+	 * ResultSchema.recordから生成する
+	 * @param schema 列の定義
+	 * @param values 各列の値
+	 */
+	TrialRecord(ResultSchema schema, Object[] values) {
+		this.schema = schema;
+		this.values = values;
+	}
+
+	/**
+	 * 列の定義を取得する
+	 * @return 列の定義
+	 */
+	public ResultSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * 列の値を取得する
+	 * @param column 列の番号
+	 * @return 値
+	 */
+	public Number get(int column) {
+		return (Number) values[column];
+	}
+
+	/**
+	 * CSVの1行に変換する
+	 * @return CSVの行
+	 */
+	public String toCsv() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(values[i]);
+		}
+		return sb.toString();
+	}
+}
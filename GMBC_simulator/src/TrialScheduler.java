@@ -0,0 +1,60 @@
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * シミュレーションの試行をスレッドプールで並列に実行するクラス
+ * 1つのセル（パラメータとグラフの組）を1つのタスクとして実行し，
+ * 結果をどの順に取り出して使うかは呼び出し側（SequentialStopping）で決める<br>
+ * セル内で使うプロトコルやグラフの変化のインスタンスは，セルごとに生成すること
+ */
+public class TrialScheduler {
+	/**
+	 * スレッドプール
+	 */
+	private ExecutorService pool;
+
+	/**
+	 * コンストラクタ
+	 * @param threadNum 並列に実行するスレッド数
+	 */
+	public TrialScheduler(int threadNum) {
+		pool = Executors.newFixedThreadPool(Math.max(threadNum, 1));
+	}
+
+	/**
+	 * セルを投入する
+	 * 結果はgetで受け取る．先行して投入したセルは，結果を使わなければFutureで取り消してよい
+	 * @param cell 実行するセル．試行の結果を返す
+	 * @return セルの結果
+	 */
+	public Future<List<TrialRecord>> start(Callable<List<TrialRecord>> cell) {
+		return pool.submit(cell);
+	}
+
+	/**
+	 * セルの結果を取得する
+	 * セルが失敗した場合はスレッドプールを止めて例外を投げる
+	 * @param cell セルの結果
+	 * @return 試行の結果
+	 * @throws InterruptedException
+	 */
+	public List<TrialRecord> get(Future<List<TrialRecord>> cell) throws InterruptedException {
+		try {
+			return cell.get();
+		} catch (ExecutionException e) {
+			pool.shutdownNow();
+			throw new IllegalStateException("試行の実行に失敗", e.getCause());
+		}
+	}
+
+	/**
+	 * スレッドプールを終了する
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+}
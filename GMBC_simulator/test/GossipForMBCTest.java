@@ -0,0 +1,162 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * GossipForMBCの差分更新のテスト
+ */
+public class GossipForMBCTest {
+	/**
+	 * MBCの更新頻度（1未満）
+	 */
+	private final static float UPDATE_RATE = 0.5f;
+
+	/**
+	 * 常に確率で更新される乱数（nextDoubleが常に0）
+	 */
+	private static Random alwaysFire() {
+		return new Random() {
+			@Override
+			public double nextDouble() {
+				return 0;
+			}
+		};
+	}
+
+	/**
+	 * 変化を購読したGMBCを生成する
+	 * @param csr グラフ
+	 * @param tvg グラフの変化（切断中のエッジのマスクを共有する）
+	 * @return 初期化したGMBC
+	 */
+	private static GossipForMBC createProtocol(CsrGraph csr, TimeVaryingGraph tvg) {
+		tvg.setVaryingRate(0.0f);
+		tvg.setGraph(csr);
+		GossipForMBC protocol = new GossipForMBC(3, UPDATE_RATE);
+		protocol.subscribe(tvg);
+		protocol.setGraph(csr);
+		protocol.setEdgeMask(tvg.getEdgeMask());
+		protocol.setRandom(alwaysFire());
+		protocol.init();
+		return protocol;
+	}
+
+	private static GossipForMBC createProtocol(CsrGraph csr) {
+		return createProtocol(csr, new TimeVaryingGraph());
+	}
+
+	private static CsrGraph createGraph() {
+		SpatialGridGraphGenerator generator = new SpatialGridGraphGenerator(200, 15.0f, 100, 100);
+		generator.setRandom(new Random(1));
+		return generator.generateCsr();
+	}
+
+	@Test
+	public void cleanNodeIsNotRegenerated() {
+		CsrGraph csr = createGraph();
+		GossipForMBC protocol = createProtocol(csr);
+		MBC[] before = new MBC[csr.getNodeCount()];
+		for (int v = 0; v < before.length; v++) {
+			before[v] = protocol.getMbc(v);
+		}
+
+		int msgNum = protocol.getMsgNum();
+		protocol.updateInTern();
+
+		// 全てのノードで更新が起きても，変化のないノードのMBCは再生成しない
+		for (int v = 0; v < before.length; v++) {
+			assertSame(before[v], protocol.getMbc(v));
+		}
+		// 更新のメッセージは数える
+		assertTrue(protocol.getMsgNum() > msgNum);
+	}
+
+	@Test
+	public void changedEdgeRegeneratesEndpointsAndCommonNeighbors() {
+		CsrGraph csr = createGraph();
+		TimeVaryingGraph tvg = new TimeVaryingGraph();
+		GossipForMBC protocol = createProtocol(csr, tvg);
+
+		// 共通する隣接ノードを持つエッジを選ぶ
+		int edge = -1;
+		BitSet common = new BitSet();
+		for (int e = 0; e < csr.getEdgeCount() && common.isEmpty(); e++) {
+			common = commonNeighbors(csr, csr.getEdgeNode0(e), csr.getEdgeNode1(e));
+			edge = e;
+		}
+		assertTrue(!common.isEmpty());
+		int node0 = csr.getEdgeNode0(edge);
+		int node1 = csr.getEdgeNode1(edge);
+		MBC[] before = new MBC[csr.getNodeCount()];
+		for (int v = 0; v < before.length; v++) {
+			before[v] = protocol.getMbc(v);
+		}
+
+		// マスクでエッジを切断し，TimeVaryingGraphと同じく変化を通知する
+		BitSet deadEdges = tvg.getEdgeMask();
+		deadEdges.set(edge);
+		protocol.edgeChanged(node0, node1);
+		protocol.updateInTern();
+
+		// 端点と共通する隣接ノードは再生成する
+		assertNotSame(before[node0], protocol.getMbc(node0));
+		assertNotSame(before[node1], protocol.getMbc(node1));
+		for (int c = common.nextSetBit(0); c >= 0; c = common.nextSetBit(c + 1)) {
+			assertNotSame(before[c], protocol.getMbc(c));
+		}
+		// 全てのノードのMBCが，切断後のグラフから生成し直したものと一致する
+		MBCGenerator generator = new MBCGenerator();
+		for (int v = 0; v < csr.getNodeCount(); v++) {
+			assertMbcEquals(csr, v, generator.generate(csr, deadEdges, v), protocol.getMbc(v));
+		}
+	}
+
+	/**
+	 * 2つのノードに共通する隣接ノード
+	 * @param csr グラフ
+	 * @param node0 ノード
+	 * @param node1 ノード
+	 * @return 共通する隣接ノード
+	 */
+	private static BitSet commonNeighbors(CsrGraph csr, int node0, int node1) {
+		BitSet neighbors = new BitSet();
+		for (int k = csr.getOffset(node0); k < csr.getOffset(node0) + csr.getDegree(node0); k++) {
+			neighbors.set(csr.getNeighbor(k));
+		}
+		BitSet common = new BitSet();
+		for (int k = csr.getOffset(node1); k < csr.getOffset(node1) + csr.getDegree(node1); k++) {
+			if (neighbors.get(csr.getNeighbor(k))) {
+				common.set(csr.getNeighbor(k));
+			}
+		}
+		return common;
+	}
+
+	/**
+	 * 2つのMBCが，元のグラフでの隣接ノードの全ての組で同じ距離を持つことを確認する
+	 * @param csr グラフ
+	 * @param v MBCを持つノード
+	 * @param expected 期待するMBC
+	 * @param actual 実際のMBC
+	 */
+	private static void assertMbcEquals(CsrGraph csr, int v, MBC expected, MBC actual) {
+		assertEquals("size of node " + v, expected.size(), actual.size());
+		int start = csr.getOffset(v);
+		int end = start + csr.getDegree(v);
+		for (int i = start; i < end; i++) {
+			int a = csr.getNeighbor(i);
+			for (int j = start; j < end; j++) {
+				int b = csr.getNeighbor(j);
+				assertEquals("node " + v + ": " + a + "-" + b,
+						expected.getDist(expected.getSlot(a, -1), expected.getSlot(b, -1)),
+						actual.getDist(actual.getSlot(a, -1), actual.getSlot(b, -1)));
+			}
+		}
+	}
+}
@@ -0,0 +1,65 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * TimeVaryingGraphの試行ごとの再現性のテスト
+ */
+public class TimeVaryingGraphTest {
+	/**
+	 * 1試行で実行するstepの数
+	 */
+	private final static int STEPS = 10;
+
+	private static CsrGraph createGraph() {
+		SpatialGridGraphGenerator generator = new SpatialGridGraphGenerator(200, 15.0f, 100, 100);
+		generator.setRandom(new Random(1));
+		return generator.generateCsr();
+	}
+
+	/**
+	 * 試行のシードで1試行を実行し，各stepの後の切断中のエッジを返す
+	 * @param tvg グラフの変化
+	 * @param trialSeed 試行のシード
+	 * @return stepごとの切断中のエッジ
+	 */
+	private static List<BitSet> runTrial(TimeVaryingGraph tvg, long trialSeed) {
+		tvg.setRandom(SeedSequence.random(trialSeed, SeedSequence.DYNAMICS));
+		tvg.init();
+		List<BitSet> masks = new ArrayList<BitSet>();
+		for (int step = 0; step < STEPS; step++) {
+			tvg.run();
+			masks.add((BitSet) tvg.getEdgeMask().clone());
+		}
+		return masks;
+	}
+
+	@Test
+	public void fixedTrialReplaysFromItsSeed() {
+		CsrGraph csr = createGraph();
+		long graphSeed = 42;
+		int k = 3;
+
+		// 試行0からkまで続けて実行
+		TimeVaryingGraph sweep = new TimeVaryingGraph();
+		sweep.setVaryingFixNum(20);
+		sweep.setGraph(csr);
+		List<BitSet> afterOthers = null;
+		for (int j = 0; j <= k; j++) {
+			afterOthers = runTrial(sweep, SeedSequence.derive(graphSeed, j));
+		}
+
+		// 試行kだけを実行
+		TimeVaryingGraph replay = new TimeVaryingGraph();
+		replay.setVaryingFixNum(20);
+		replay.setGraph(csr);
+		List<BitSet> alone = runTrial(replay, SeedSequence.derive(graphSeed, k));
+
+		assertEquals(alone, afterOthers);
+	}
+}